@@ -0,0 +1,103 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes blocks on worker threads as soon as they are produced (e.g. downloaded), so that
+ * fetching and classification overlap. Blocks go through a bounded queue: when the workers
+ * fall behind, submit() waits, which keeps memory bounded.
+ * The running totals are printed every progressEvery blocks.
+ */
+public class AnalysisPipeline {
+    // Marks the end of the stream, one per worker
+    private static final Object END = new Object();
+
+    private final Context context;
+    private final BlockingQueue<Object> queue;
+    private final ExecutorService executor;
+    private final List<Future<?>> workers = new ArrayList<>();
+    private final int numWorkers;
+    private final int progressEvery;
+    private final BlockStats total = new BlockStats();
+    private int analyzed = 0;
+
+    public AnalysisPipeline(Context context, int numWorkers, int capacity, int progressEvery) {
+        this.context = context;
+        this.numWorkers = numWorkers;
+        this.progressEvery = progressEvery;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = Executors.newFixedThreadPool(numWorkers);
+    }
+
+    public void start() {
+        for (int i = 0; i < numWorkers; i++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Context.propagate(context);
+                    while (true) {
+                        Object item = queue.take();
+                        if (item == END)
+                            return null;
+                        Block block = (Block) item;
+                        BlockStats b = new BlockStats();
+                        long start = System.nanoTime();
+                        BlockAnalysis.analyzeBlock(block, b);
+                        Metrics.blockAnalyzed(block.getHashAsString(), block.getTransactions().size(), System.nanoTime() - start);
+                        add(b);
+                    }
+                }
+            }));
+        }
+    }
+
+    private void add(BlockStats b) {
+        synchronized (total) {
+            total.merge(b);
+            analyzed++;
+            if ((progressEvery > 0) && (analyzed % progressEvery == 0))
+                System.out.println("Analyzed " + analyzed + " blocks, Ratio seg/noseg=" + 1.0 * total.acSegwitSpace / total.acMainChainSpace);
+        }
+    }
+
+    // Waits while the queue is full. Fails if a worker failed, instead of waiting forever.
+    public void submit(Block block) throws InterruptedException, ExecutionException {
+        put(block);
+    }
+
+    private void put(Object item) throws InterruptedException, ExecutionException {
+        while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+            for (Future<?> worker : workers) {
+                if (worker.isDone())
+                    worker.get();
+            }
+        }
+    }
+
+    // Waits for the submitted blocks to be analyzed and returns the totals
+    public BlockStats finish() throws InterruptedException, ExecutionException {
+        for (int i = 0; i < numWorkers; i++)
+            put(END);
+        try {
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        synchronized (total) {
+            return total;
+        }
+    }
+}
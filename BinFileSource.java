@@ -0,0 +1,63 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The 0.bin..(n-1).bin files written by FetchLastBlocks, one block per file.
+ * Block i is the i-th block before the starting hash, so heights are not known.
+ */
+public class BinFileSource implements BlockSource {
+    private final NetworkParameters params;
+    private final File directory;
+    private final int numBlocks;
+
+    // MappedBlockReader is not thread-safe, each worker gets its own
+    private final ThreadLocal<MappedBlockReader> readers = new ThreadLocal<MappedBlockReader>() {
+        @Override
+        protected MappedBlockReader initialValue() {
+            return new MappedBlockReader(params, directory);
+        }
+    };
+
+    public BinFileSource(NetworkParameters params, File directory, int numBlocks) {
+        this.params = params;
+        this.directory = directory;
+        this.numBlocks = numBlocks;
+    }
+
+    @Override
+    public int size() {
+        return numBlocks;
+    }
+
+    @Override
+    public Block getBlock(int index) throws IOException {
+        return readers.get().read(BlockAnalysis.blockFileName(index));
+    }
+
+    @Override
+    public ByteBuffer getBlockBytes(int index) throws IOException {
+        return readers.get().mapPayload(BlockAnalysis.blockFileName(index));
+    }
+
+    @Override
+    public Sha256Hash getHash(int index) throws IOException {
+        return readers.get().readHash(BlockAnalysis.blockFileName(index));
+    }
+
+    @Override
+    public int getHeight(int index) {
+        return -1;
+    }
+
+    @Override
+    public String getName(int index) {
+        return BlockAnalysis.blockFileName(index);
+    }
+}
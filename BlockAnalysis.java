@@ -13,15 +13,17 @@ import org.bitcoinj.script.Script;
 import org.bitcoinj.script.ScriptChunk;
 import org.bitcoinj.script.ScriptOpCodes;
 import org.bitcoinj.store.*;
-import org.bitcoinj.utils.BlockFileLoader;
 import com.google.common.base.Preconditions;
 import org.bitcoinj.wallet.DefaultRiskAnalysis;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.bitcoinj.script.ScriptOpCodes.*;
@@ -29,35 +31,14 @@ import static org.bitcoinj.script.ScriptOpCodes.OP_1;
 import static org.bitcoinj.script.ScriptOpCodes.OP_1NEGATE;
 
 public class BlockAnalysis {
-    private FileInputStream currentFileStream = null;
-    private Block nextBlock = null;
-
-    public Block importBlock(NetworkParameters params, String fileName) {
-        try {
-            currentFileStream = new FileInputStream(fileName);
-            long size = new File(fileName).length();
-
-            try {
-                //deserialize without msg header
-                byte[] bytes = new byte[(int) size];
-                currentFileStream.read(bytes, 0, (int) size);
-                /*
-                nextBlock = params.getDefaultSerializer().makeBlock(bytes);
-                */
-                // Deserialize with msg headers
-
-                nextBlock = (Block) params.getDefaultSerializer().deserialize(ByteBuffer.wrap(bytes));
-                return nextBlock;
-            } catch (ProtocolException e) {
-
-            }
-        } catch (FileNotFoundException e) {
-            currentFileStream = null;
-
-        } catch (IOException e) {
-            currentFileStream = null;
-        }
-        return null;
+    private MappedBlockReader reader = null;
+
+    // Deserializes a block file written by exportBlock (with msg headers). The parsing is timed in
+    // Metrics.DESERIALIZE, see StreamingBlockReader.makeBlock.
+    public Block importBlock(NetworkParameters params, String fileName) throws IOException {
+        if (reader == null)
+            reader = new MappedBlockReader(params, null);
+        return reader.read(fileName);
     }
 
     public void exportBlock(NetworkParameters params, Block block, String fileName) {
@@ -65,6 +46,7 @@ public class BlockAnalysis {
         File file;
 
         try {
+            long start = System.nanoTime();
             file = new File(fileName);
             fop = new FileOutputStream(file);
 
@@ -74,6 +56,7 @@ public class BlockAnalysis {
             }
             params.getDefaultSerializer().serialize(block, fop);
             fop.close();
+            Metrics.blockExported(fileName, file.length(), System.nanoTime() - start);
 
         } catch (FileNotFoundException e) {
             e.printStackTrace();
@@ -237,12 +220,55 @@ public class BlockAnalysis {
     }
 
     static public class KeyStats {
-        int count;
-        int acNumKeys;
-        int acNumSigs;
-        int count2of3;
-        int count2of2;
-        int acSigSize;
+        // OP_16 is the largest number of keys
+        static final int MAX_KEYS = 16;
+
+        long count;
+        long acNumKeys;
+        long acNumSigs;
+        long count2of3;
+        long count2of2;
+        long acSigSize;
+        // shapes[m * (MAX_KEYS + 1) + n] = number of m-of-n scripts, allocated by the first one
+        long[] shapes = null;
+        final HyperLogLog distinctKeys = new HyperLogLog();
+
+        void addShape(int numSigs, int numKeys) {
+            if (shapes == null)
+                shapes = new long[(MAX_KEYS + 1) * (MAX_KEYS + 1)];
+            shapes[Math.min(numSigs, MAX_KEYS) * (MAX_KEYS + 1) + Math.min(numKeys, MAX_KEYS)]++;
+        }
+
+        // An m-of-n multisig script of the given size
+        void add(int numSigs, int numKeys, int scriptSize) {
+            count++;
+            acNumKeys += numKeys;
+            acNumSigs += numSigs;
+            acSigSize += scriptSize;
+            if ((numKeys==3) && (numSigs==2)) count2of3++;
+            if ((numKeys==2) && (numSigs==2)) count2of2++;
+            addShape(numSigs, numKeys);
+        }
+
+        long getShape(int numSigs, int numKeys) {
+            return (shapes == null) ? 0 : shapes[numSigs * (MAX_KEYS + 1) + numKeys];
+        }
+
+        void merge(KeyStats o) {
+            count += o.count;
+            acNumKeys += o.acNumKeys;
+            acNumSigs += o.acNumSigs;
+            count2of3 += o.count2of3;
+            count2of2 += o.count2of2;
+            acSigSize += o.acSigSize;
+            if (o.shapes != null) {
+                if (shapes == null)
+                    shapes = new long[o.shapes.length];
+                for (int i = 0; i < shapes.length; i++)
+                    shapes[i] += o.shapes[i];
+            }
+            distinctKeys.merge(o.distinctKeys);
+        }
     }
 
     static public boolean isSentToMultiSig(Script script,KeyStats ks) {
@@ -271,12 +297,9 @@ public class BlockAnalysis {
             numSigs =decodeFromOpN(op);
             if ( numSigs< 1) return false;
 
-            ks.count++;
-            ks.acNumKeys +=numKeys;
-            ks.acNumSigs +=numSigs;
-            ks.acSigSize +=script.getProgram().length;
-            if ((numKeys==3) && (numSigs==2)) ks.count2of3++;
-            if ((numKeys==2) && (numSigs==2)) ks.count2of2++;
+            ks.add(numSigs, numKeys, script.getProgram().length);
+            for (int i = 1; i < chunks.size() - 2; i++)
+                ks.distinctKeys.add(chunks.get(i).data);
 
         } catch (IllegalStateException e) {
             return false;   // Not an OP_N opcode.
@@ -377,69 +400,9 @@ public class BlockAnalysis {
     }
 
 
+    // See SignatureValidator.isValidEncoding
     static boolean IsValidSignatureEncoding(byte[] sig) {
-        // Format: 0x30 [total-length] 0x02 [R-length] [R] 0x02 [S-length] [S] [sighash]
-        // * total-length: 1-byte length descriptor of everything that follows,
-        //   excluding the sighash byte.
-        // * R-length: 1-byte length descriptor of the R value that follows.
-        // * R: arbitrary-length big-endian encoded R value. It must use the shortest
-        //   possible encoding for a positive integers (which means no null bytes at
-        //   the start, except a single one when the next byte has its highest bit set).
-        // * S-length: 1-byte length descriptor of the S value that follows.
-        // * S: arbitrary-length big-endian encoded S value. The same rules apply.
-        // * sighash: 1-byte value indicating what data is hashed (not part of the DER
-        //   signature)
-
-        // Minimum and maximum size constraints.
-        if (sig.length < 9) return false;
-        if (sig.length > 73) return false;
-
-        // A signature is of type 0x30 (compound).
-        if (sig[0] != 0x30) return false;
-
-        // Make sure the length covers the entire signature.
-        if (sig[1] != sig.length - 3) return false;
-
-        // Extract the length of the R element.
-        int lenR = sig[3];
-
-        // Make sure the length of the S element is still inside the signature.
-        if (5 + lenR >= sig.length) return false;
-
-        // Extract the length of the S element.
-        int lenS = sig[5 + lenR];
-
-        // Verify that the length of the signature matches the sum of the length
-        // of the elements.
-        if (((lenR + lenS + 7) != sig.length)) return false;
-
-        // Check whether the R element is an integer.
-        if (sig[2] != 0x02) return false;
-
-        // Zero-length integers are not allowed for R.
-        if (lenR == 0) return false;
-
-        // Negative numbers are not allowed for R.
-        if ((sig[4] & 0x80)!=0) return false;
-
-        // Null bytes at the start of R are not allowed, unless R would
-        // otherwise be interpreted as a negative number.
-        if (lenR > 1 && (sig[4] == 0x00) && ((sig[5] & 0x80)==0)) return false;
-
-        // Check whether the S element is an integer.
-        if (sig[lenR + 4] != 0x02) return false;
-
-        // Zero-length integers are not allowed for S.
-        if (lenS == 0) return false;
-
-        // Negative numbers are not allowed for S.
-        if ((sig[lenR + 6] & 0x80)!=0) return false;
-
-        // Null bytes at the start of S are not allowed, unless S would otherwise be
-        // interpreted as a negative number.
-        if (lenS > 1 && (sig[lenR + 6] == 0x00) && (sig[lenR + 7] & 0x80)==0) return false;
-
-        return true;
+        return SignatureValidator.isValidEncoding(sig, 0, sig.length);
     }
 
     static boolean isSignature(byte[] data ) {
@@ -505,343 +468,624 @@ public class BlockAnalysis {
         return;
     }
 
-    public static void main(String[] args) throws BlockStoreException, VerificationException, PrunedException {
+    public static void analyzeBlock(Block block, BlockStats s) {
+        List<Transaction> transactions = block.getTransactions();
+        s.acTransactions += transactions.size();
+        for (int i = 0; i < transactions.size(); i++) {
+            analyzeTransaction(transactions.get(i), i, s);
+            // A parsed Block has no witnesses, its transactions only have their base size
+            s.acTotalSize += transactions.get(i).getMessageSize();
+        }
+    }
 
-        NetworkParameters params = MainNetParams.get();
-        Context context = new Context(params);
+    // Same as analyzeBlock, for the block the reader was opened on. Only one transaction is
+    // deserialized at a time.
+    public static void analyzeBlock(StreamingBlockReader reader, BlockStats s) throws ProtocolException {
+        analyzeBlock(reader, s, null, null);
+    }
 
-        BlockAnalysis ba = new BlockAnalysis();
-        //String fileName = "C:\\Users\\Sergio\\Downloads\\00000000d1145790a8694403d4063f323d499e655c83426834d4ce2f8dd4a2ee.bin";
-        String fileName = "0.bin";
-        int acInputs = 0;
-        int acOutputs = 0;
-        int acInputs2 =0; // inputs, for transactions with 2 outputs
-        int countOutputs2=0;
-        int count1i1o= 0;
-        int countNi1o= 0;
-        int acOpReturn = 0;
-        int acSentToCLTVPaymentChannel = 0;
-        int acPayToScriptHash = 0;
-        int acSentToMultiSig = 0;
-        int acSentToAddress = 0;
-        int acSentToRawPubKey = 0;
-        int acTransactions = 0;
-        int acUnknown = 0;
-        int acInvalid =0;
-        int acOverlapedTypes =0;
-        int acInputP2PKH =0;
-        int acInputP2SH_MULTISIG =0;
-        int acInputP2SH=0;
-        int acInputP2SH_PK =0;
-        int acInputP2PK=0;
-        int acInputP2PKXX=0;
-        int acInputMULTISIG=0;
-        int acInputP2SHSize=0;
-
-        int acMainChainSpace =0;
-        int acSegwitSpace=0;
-        int transactionFixedLength = 10;
-        int acTotalSize=0;
-        int inputFixedLength = 40;
-        int outputFixedLength = 9;
-
-
-        KeyStats ksi = new KeyStats();
-        KeyStats kso = new KeyStats();
-
-        for (int bn=0;bn<1000;bn++) {
-            fileName = String.format(Locale.US, "%d.bin", bn);
-            System.out.println("Reading block "+fileName);
-            Block block = ba.importBlock(params, fileName);
-            System.out.println("done");
-
-
-            List<Transaction> transactions = block.getTransactions();
-            acTransactions += transactions.size();
-            int blocks = 1;
-            for (int i = 0; i < transactions.size(); i++) {
-                Transaction t = transactions.get(i);
-                List<TransactionInput> inputs = t.getInputs();
-                List<TransactionOutput> outputs = t.getOutputs();
-
-                if (outputs.size()==2) {
-                    acInputs2 += inputs.size();
-                    countOutputs2++;
-                }
+    // If utxo is given, inputs are classified by the outputs they spend when these are in the index,
+    // and the outputs of the block are added to it. If columns is given, every input and output is
+    // written to it.
+    public static void analyzeBlock(StreamingBlockReader reader, BlockStats s, UtxoIndex utxo, ColumnExporter columns) throws ProtocolException {
+        s.acTransactions += reader.getTransactionCount();
+        for (int i = 0; reader.hasNext(); i++) {
+            analyzeTransaction(reader.next(), i, s, utxo, columns);
+            s.addMeasuredSize(reader);
+        }
+    }
 
-                if ((inputs.size()==1) && (outputs.size()==1)) {
-                    count1i1o++;
-                    //System.out.println("Small tx: "+t.getHashAsString());
-                } else
-                if (outputs.size()==1) {
-                    countNi1o++;
-                    //System.out.println("Small tx: "+t.getHashAsString());
-                }
-                acInputs += inputs.size();
-                acOutputs += outputs.size();
-
-                acMainChainSpace +=transactionFixedLength;
-                acTotalSize      +=t.getMessageSize();
-
-                // Skip coinbase input because it is a mal-formed script
-                if (i!=0)
-                for (int j = 0; j < inputs.size(); j++) {
-                    // identify type of input
-                    TransactionInput input = inputs.get(j);
-                    int iFound =0;
-                    boolean isMULTISIG = isInputMULTISIG(input);
-
-                    acMainChainSpace +=inputFixedLength;
-                    int  sbytes = input.getScriptBytes().length;
-
-                    if (isMULTISIG) {
-                        iFound++;
-                        acInputMULTISIG++;
-                        //
-
-                    }
-                    boolean isP2PKXX  = isInputP2PKXX(input);
-                    if (isP2PKXX) {
-                        iFound++;
-                        acInputP2PKXX++;
-
-                    }
-                    // P2SH multisignatures can only be detected in inputs
-                    boolean isP2PKH = isInputP2PKH(input);
-                    if (isP2PKH) {
-                        iFound++;
-                        // Turns witness
-                        acSegwitSpace +=sbytes;
-                        acInputP2PKH++;
-
-                    }
-
-                    boolean isP2SH_MULTISIG = isInputP2SH_MULTISIG(input,ksi);
-                    if (isP2SH_MULTISIG ) {
-                        iFound++;
-                        acInputP2SH_MULTISIG++;
-                    }
-                    boolean isP2SH= isInputP2SH(input);
-                    if (isP2SH) {
-                        iFound++;
-                        acInputP2SH++;
-                        acSegwitSpace +=sbytes; // Turns into P2WSH
-                        acInputP2SHSize +=input.getScriptBytes().length;
-                    }
-                    if ((!isP2SH) && (!isP2PKH))
-                        acMainChainSpace +=sbytes;
-
-                    boolean isP2SH_PK = isInputP2SH_PK(input);
-                    if (isP2SH_PK ) {
-                        iFound++;
-                        acInputP2SH_PK++;
-                    }
-                    boolean isP2PK = isInputP2PK(input);
-                    if (isP2PK ) {
-                        iFound++;
-                        acInputP2PK++;
-                    }
-                    if (iFound==0) {
-                        breakme();
-                        //boolean xisP2SH_PK = xisInputP2SH_PK(input);
-                        // Asumo
-                        System.out.println("Cannot recognize: "+t.getHashAsString()+" input "+j);
-                        System.out.println("Input: "+input.getOutpoint().toString());
-                    }
+    public static void analyzeTransaction(Transaction t, int i, BlockStats s) {
+        analyzeTransaction(t, i, s, null, null);
+    }
+
+    // i is the position of t in its block, the first one being the coinbase.
+    // acTransactions and acTotalSize are counted by the caller.
+    public static void analyzeTransaction(Transaction t, int i, BlockStats s, UtxoIndex utxo, ColumnExporter columns) {
+        List<TransactionInput> inputs = t.getInputs();
+        List<TransactionOutput> outputs = t.getOutputs();
+
+        if (outputs.size()==2) {
+            s.acInputs2 += inputs.size();
+            s.countOutputs2++;
+        }
+
+        if ((inputs.size()==1) && (outputs.size()==1)) {
+            s.count1i1o++;
+            //System.out.println("Small tx: "+t.getHashAsString());
+        } else
+        if (outputs.size()==1) {
+            s.countNi1o++;
+            //System.out.println("Small tx: "+t.getHashAsString());
+        }
+        s.acInputs += inputs.size();
+        s.acOutputs += outputs.size();
+        s.inputsPerTransaction.record(inputs.size());
+        s.outputsPerTransaction.record(outputs.size());
+
+        s.startTransactionSpace();
+
+        Sha256Hash txHash = null;
+        boolean timed = s.nextTransactionTimed();
+        long classifyNanos = 0;
+
+        // The signature encoding of every push of the scriptSigs is checked up front, in one loop.
+        // It is part of the classification time.
+        ScriptPushes pushes = s.pushes;
+        pushes.clear();
+        if (i!=0) {
+            long start = timed ? System.nanoTime() : 0;
+            for (int j = 0; j < inputs.size(); j++)
+                pushes.add(inputs.get(j).getScriptBytes());
+            pushes.validate();
+            if (timed)
+                classifyNanos += System.nanoTime() - start;
+        }
+
+        // Skip coinbase input because it is a mal-formed script
+        if (i!=0)
+        for (int j = 0; j < inputs.size(); j++) {
+            // identify type of input
+            TransactionInput input = inputs.get(j);
+            long start = timed ? System.nanoTime() : 0;
+            int type = InputClassifier.classify(pushes, j, s.ksi);
+            if (timed)
+                classifyNanos += System.nanoTime() - start;
+            if (utxo != null) {
+                TransactionOutPoint outpoint = input.getOutpoint();
+                long spent = utxo.spend(outpoint.getHash(), outpoint.getIndex());
+                if (spent != UtxoIndex.NOT_FOUND)
+                    type = InputClassifier.resolve(type, UtxoIndex.typeOf(spent));
+            }
+            int iFound = Integer.bitCount(type);
+
+            int  sbytes = input.getScriptBytes().length;
+            s.addInputSpace(type, sbytes);
+            if (columns != null)
+                columns.addInput(i, j, type, sbytes);
+
+            if ((type & InputClassifier.MULTISIG) != 0)
+                s.acInputMULTISIG++;
+            if ((type & InputClassifier.P2PKXX) != 0)
+                s.acInputP2PKXX++;
+            // P2SH multisignatures can only be detected in inputs
+            boolean isP2PKH = (type & InputClassifier.P2PKH) != 0;
+            if (isP2PKH)
+                s.acInputP2PKH++;
+            if ((type & InputClassifier.P2SH_MULTISIG) != 0)
+                s.acInputP2SH_MULTISIG++;
+            boolean isP2SH = (type & InputClassifier.P2SH) != 0;
+            if (isP2SH) {
+                s.acInputP2SH++;
+                s.acInputP2SHSize +=sbytes;
+            }
+
+            if ((type & InputClassifier.P2SH_PK) != 0)
+                s.acInputP2SH_PK++;
+            if ((type & InputClassifier.P2PK) != 0)
+                s.acInputP2PK++;
+            for (int k = 0; k < InputClassifier.TYPE_NAMES.length; k++) {
+                if ((type & (1 << k)) != 0)
+                    s.scriptSigSize[k].record(sbytes);
+            }
+            s.scriptSigTemplates.record(input.getScriptBytes());
+            int last = pushes.getFirst(j) + pushes.getChunkCount(j) - 1;
+            if (isP2SH && (pushes.getChunkCount(j) > 0) && pushes.isData(last)) {
+                // A P2SH spend ends with the push of its redeem script
+                byte[] script = pushes.getScript(j);
+                int offset = pushes.getOffset(last);
+                int length = pushes.getLength(last);
+                s.redeemScriptSize.record(length);
+                s.distinctRedeemScripts.add(script, offset, length);
+                if ((type & (InputClassifier.P2SH_MULTISIG | InputClassifier.P2SH_PK)) == 0)
+                    s.otherRedeemScriptTemplates.record(script, offset, length);
+            }
+            if (iFound==0) {
+                breakme();
+                //boolean xisP2SH_PK = xisInputP2SH_PK(input);
+                // Asumo
+                UnrecognizedInputs.report(input.getScriptBytes(), input.getOutpoint());
+            }
+
+        }
+        if (timed && (i != 0) && !inputs.isEmpty())
+            Metrics.CLASSIFY_INPUT.record(classifyNanos, inputs.size());
+        classifyNanos = 0;
+
+        for (int j = 0; j < outputs.size(); j++) {
+            // identify type of input
+            TransactionOutput output = outputs.get(j);
+            byte[] outScript = output.getScriptBytes();
+            int outScriptSize  = outScript.length;
+
+            long start = timed ? System.nanoTime() : 0;
+            int type = OutputClassifier.classify(outScript, s.kso);
+            if (timed)
+                classifyNanos += System.nanoTime() - start;
+            // OP_RETURN outputs can never be spent
+            if ((utxo != null) && ((type & OutputClassifier.OPRETURN) == 0)) {
+                if (txHash == null)
+                    txHash = t.getHash();
+                utxo.put(txHash, j, type, outScriptSize);
+            }
+            int found = Integer.bitCount(type);
+            boolean isPayToScriptHash = (type & OutputClassifier.P2SH) != 0;
+            boolean isSentToAddress = (type & OutputClassifier.ADDRESS) != 0;
+
+            if ((type & OutputClassifier.INVALID) != 0)
+                s.acInvalid++;
+            if ((type & OutputClassifier.OPRETURN) != 0)
+                s.acOpReturn++;
+            if ((type & OutputClassifier.CLTV_PAYMENT_CHANNEL) != 0)
+                s.acSentToCLTVPaymentChannel++;
+            if (isPayToScriptHash)
+                s.acPayToScriptHash++;
+            if ((type & OutputClassifier.MULTISIG) != 0)
+                s.acSentToMultiSig++;
+            if (isSentToAddress)
+                s.acSentToAddress++;
+            if ((type & OutputClassifier.RAW_PUBKEY) != 0)
+                s.acSentToRawPubKey++;
+
+            // Distinct destinations, by the hash in the standard scripts
+            if (isPayToScriptHash && (outScriptSize == 23))
+                s.distinctScriptHashes.add(outScript, 2, 20);
+            if (isSentToAddress && (outScriptSize == 25))
+                s.distinctAddresses.add(outScript, 3, 20);
+
+            // The space each output would take, see SpaceModel
+            s.addOutputSpace(type, outScriptSize);
+            if (columns != null)
+                columns.addOutput(i, j, type, outScriptSize);
+
+            if (found > 1)
+                s.acOverlapedTypes++;
+            if (found == 0)
+                s.acUnknown++;
+        }
+        if (timed && !outputs.isEmpty())
+            Metrics.CLASSIFY_OUTPUT.record(classifyNanos, outputs.size());
+        s.endTransactionSpace();
+    }
+
+    // Interval of the progress line printed while analyzing
+    static final long REPORT_MILLIS = 10000;
+
+    static String blockFileName(int bn) {
+        return String.format(Locale.US, "%d.bin", bn);
+    }
+
+    // Analyzes the blocks [from,to) of the source on the calling thread.
+    // If a store is given, blocks found in it are not analyzed again and new results are added to it.
+    // Transactions are streamed from the serialized blocks, see StreamingBlockReader.
+    public static BlockStats analyzeRange(BlockSource source, int from, int to, BlockStatsStore store) throws IOException {
+        BlockStats s = new BlockStats();
+        StreamingBlockReader reader = new StreamingBlockReader(Context.get().getParams());
+        for (int bn=from;bn<to;bn++) {
+            if (store != null)
+                s.merge(analyzeStored(source, bn, reader, store));
+            else
+                analyzeBlock(source, bn, reader, s, null, null);
+        }
+        return s;
+    }
+
+    // Results of block bn, taken from the store if it has them. Otherwise the block is analyzed
+    // and its results added to the store.
+    static BlockStats analyzeStored(BlockSource source, int bn, StreamingBlockReader reader, BlockStatsStore store) throws IOException {
+        Sha256Hash hash = source.getHash(bn);
+        BlockStats stored = store.get(hash);
+        if (stored != null)
+            return stored;
+        BlockStats b = new BlockStats();
+        analyzeBlock(source, bn, reader, b, null, null);
+        store.put(hash, source.getHeight(bn), b);
+        return b;
+    }
+
+    // Adds block bn of the source to s, see analyzeBlock(StreamingBlockReader, BlockStats, UtxoIndex, ColumnExporter)
+    static void analyzeBlock(BlockSource source, int bn, StreamingBlockReader reader, BlockStats s, UtxoIndex utxo, ColumnExporter columns) throws IOException {
+        try {
+            long start = System.nanoTime();
+            reader.open(source.getBlockBytes(bn));
+            if (columns != null) {
+                int height = source.getHeight(bn);
+                columns.startBlock((height >= 0) ? height : bn);
+            }
+            analyzeBlock(reader, s, utxo, columns);
+            Metrics.blockAnalyzed(source.getName(bn), reader.getTransactionCount(), System.nanoTime() - start);
+        } catch (ProtocolException e) {
+            throw new IOException("Cannot parse block " + source.getName(bn), e);
+        }
+    }
+
+    // Analyzes the blocks from the oldest to the newest, on the calling thread.
+    // With utxo, inputs are classified by the outputs they spend. Only the outputs of the blocks
+    // analyzed are known, so every input is resolved only when the range starts at the genesis block.
+    // With columns, the inputs and outputs are exported in that order.
+    static BlockStats analyzeInOrder(BlockSource source, UtxoIndex utxo, ColumnExporter columns) throws IOException {
+        BlockStats s = new BlockStats();
+        StreamingBlockReader reader = new StreamingBlockReader(Context.get().getParams());
+        for (int bn : heightOrder(source))
+            analyzeBlock(source, bn, reader, s, utxo, columns);
+        return s;
+    }
 
+    // Positions of the blocks of the source from the oldest to the newest. Without heights, the
+    // blocks are taken to be newest first, as FetchLastBlocks writes them.
+    static int[] heightOrder(final BlockSource source) {
+        int n = source.size();
+        boolean heights = true;
+        for (int i = 0; i < n; i++)
+            heights &= source.getHeight(i) >= 0;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = heights ? i : n - 1 - i;
+        if (heights) {
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Integer.compare(source.getHeight(a), source.getHeight(b));
                 }
+            });
+        }
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++)
+            result[i] = order[i];
+        return result;
+    }
 
-                for (int j = 0; j < outputs.size(); j++) {
-                    // identify type of input
-                    TransactionOutput output = outputs.get(j);
-                    boolean isInvalid =false;
-
-                    acMainChainSpace +=outputFixedLength;
-
-                    // Here he must make some adjustments, depending on the output type
-                    int outScriptSize  = output.getScriptBytes().length;
-
-                    Script script = null;
-                    try {
-                    script = output.getScriptPubKey();
-                    } catch (ScriptException e) {
-                        // If script has errors, count as invalid
-                        isInvalid=true;
-                    }
-                    boolean isOpReturn = false;
-                    boolean isSentToCLTVPaymentChannel = false;
-                    boolean isPayToScriptHash = false;
-                    boolean isSentToMultiSig = false;
-                    boolean isSentToAddress = false;
-                    boolean isSentToRawPubKey = false;
-
-                    if (!isInvalid) {
-                        isOpReturn = (script.isOpReturn());
-                        isSentToCLTVPaymentChannel = (script.isSentToCLTVPaymentChannel());
-                        isPayToScriptHash = (script.isPayToScriptHash());
-                        //isSentToMultiSig = (script.isSentToMultiSig());
-                        isSentToMultiSig = isSentToMultiSig(script,kso); // this is uncommon now, not a single case seen
-                        isSentToAddress = (script.isSentToAddress());
-                        isSentToRawPubKey = (script.isSentToRawPubKey());
-                    }
-                    int found = 0;
-
-                    if (isInvalid) {
-                        acInvalid++;
-                        found++;
-                    }
-
-                    if (isOpReturn) {
-                        acOpReturn++;
-                        found++;
-                    }
-                    if (isSentToCLTVPaymentChannel) {
-                        acSentToCLTVPaymentChannel++;
-                        found++;
-                    }
-                    if (isPayToScriptHash) {
-                        acPayToScriptHash++;
-                        // This will be turned into P2WSH
-                        // Original sig:  OP_HASH160 [20-byte-hash-value] OP_EQUAL (22 bytes total)
-                        // New sig: 0 <32-byte-hash> (0x0020{32-byte-hash})
-                        acMainChainSpace +=33;
-                        found++;
-                    }
-                    if (isSentToMultiSig) {
-                        acSentToMultiSig++;
-                        found++;
-                    }
-                    if (isSentToAddress) {
-                        acSentToAddress++;
-                        //scriptPubKey: OP_DUP OP_HASH160 <pubKeyHash> OP_EQUALVERIFY OP_CHECKSIG (25 bytes)
-                        // new: 0 <20-byte-key-hash> (0x0014{20-byte-key-hash}) (22)
-                        acMainChainSpace +=22;
-                        found++;
-                    }
-                    if (isSentToRawPubKey) {
-                        acSentToRawPubKey++;
-                        found++;
-                    }
-
-                    // if it is not isPayToScriptHash or isSentToAddress , assume no modification will be made
-                    if ((!isSentToAddress) && (!isPayToScriptHash))
-                        acMainChainSpace +=outScriptSize;
-
-                    if (found > 1)
-                        acOverlapedTypes++;
-                    if (found == 0)
-                        acUnknown++;
+    // Analyzes the blocks of the source one by one, in chain order, adding each to the series.
+    // Blocks without a height are labeled with their position in that order.
+    static BlockStats writeSeries(BlockSource source, BlockStatsStore store, SeriesWriter series) throws IOException {
+        BlockStats s = new BlockStats();
+        StreamingBlockReader reader = new StreamingBlockReader(Context.get().getParams());
+        int[] order = heightOrder(source);
+        for (int k = 0; k < order.length; k++) {
+            int bn = order[k];
+            BlockStats b;
+            if (store != null) {
+                b = analyzeStored(source, bn, reader, store);
+            } else {
+                b = new BlockStats();
+                analyzeBlock(source, bn, reader, b, null, null);
+            }
+            int height = source.getHeight(bn);
+            series.add((height >= 0) ? height : k, b.toArray());
+            s.merge(b);
+        }
+        return s;
+    }
+
+    // Splits a range of blocks until it is small enough to be analyzed by a single worker.
+    // Each leaf analyzes its blocks into its own BlockStats.
+    static class AnalyzeTask extends RecursiveTask<BlockStats> {
+        private static final long serialVersionUID = 1L;
+        static final int LEAF_BLOCKS = 8;
+
+        final Context context;
+        final BlockSource source;
+        final BlockStatsStore store;
+        final int from;
+        final int to;
+
+        AnalyzeTask(Context context, BlockSource source, BlockStatsStore store, int from, int to) {
+            this.context = context;
+            this.source = source;
+            this.store = store;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BlockStats compute() {
+            if (to - from <= LEAF_BLOCKS) {
+                Context.propagate(context);
+                try {
+                    return analyzeRange(source, from, to, store);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
+            int mid = (from + to) >>> 1;
+            AnalyzeTask left = new AnalyzeTask(context, source, store, from, mid);
+            left.fork();
+            BlockStats right = new AnalyzeTask(context, source, store, mid, to).compute();
+            return left.join().merge(right);
         }
-        // Result
-        System.out.println("Result:");
-        System.out.println("acTotalSize =" + acTotalSize);
-        int segNoSegSize = acMainChainSpace+acSegwitSpace;
+    }
 
-        System.out.println("segNoSegSize (seg+noseg) =" + segNoSegSize );
-        System.out.println("Ratio SegNoSeg/total=" + 1.0 * acTotalSize / segNoSegSize);
+    // Copies every block of the source to a block archive, with the bytes the source has
+    // (witnesses included), not a serialization of the parsed Block
+    static void pack(BlockSource source, File base, boolean compress) throws IOException {
+        // An existing archive keeps its format, and its dictionary if it has one
+        boolean exists = BlockArchive.indexFile(base).length() > 0;
+        if (compress && exists && !BlockArchive.dictionaryFile(base).exists())
+            throw new IOException(base + " already holds uncompressed blocks and cannot be compressed");
+        byte[] dictionary = (compress && !exists) ? trainDictionary(source) : null;
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(base, dictionary)) {
+            for (int i = 0; i < source.size(); i++)
+                writer.append(source.getHeight(i), source.getHash(i), source.getBlockBytes(i));
+            System.out.println("Blocks in archive: " + writer.size());
+            if (writer.isCompressed() && (writer.getSerializedBytes() > 0))
+                System.out.println(String.format(Locale.US, "Bytes written: %d for %d serialized (%.1f%%)", writer.getStoredBytes(),
+                        writer.getSerializedBytes(), getPercent(writer.getStoredBytes(), writer.getSerializedBytes())));
+        }
+    }
 
+    // Trains a compression dictionary on the start of SAMPLE_BLOCKS blocks spread over the source
+    static byte[] trainDictionary(BlockSource source) throws IOException {
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        int n = source.size();
+        int samples = Math.min(n, DictionaryTrainer.SAMPLE_BLOCKS);
+        for (int k = 0; k < samples; k++) {
+            ByteBuffer block = source.getBlockBytes((int) ((long) n * k / samples));
+            byte[] sample = new byte[Math.min(block.remaining(), DictionaryTrainer.SAMPLE_BYTES / samples)];
+            block.get(sample);
+            trainer.add(sample);
+        }
+        byte[] dictionary = trainer.train(DictionaryTrainer.MAX_SIZE);
+        System.out.println("Dictionary: " + dictionary.length + " bytes trained on " + trainer.getSampleBytes() + " bytes of " + samples + " blocks");
+        return dictionary;
+    }
 
-        System.out.println("acMainChainSpace =" + acMainChainSpace);
-        System.out.println("acSegwitSpace =" + acSegwitSpace);
-        System.out.println("Ratio seg/noseg=" + 1.0 * acSegwitSpace / acMainChainSpace);
+    // Prints the report for the heights in range ("from-to", either side may be omitted) using the
+    // results in the store, once for the whole range or once every `every` blocks
+    // If series is given, the stored blocks of the range are also added to it in height order.
+    static void query(BlockStatsStore store, String range, int every, SeriesWriter series) {
+        StatsRangeIndex index = new StatsRangeIndex(store.getRows());
+        // Blocks read from .bin files are stored without a height
+        if (index.size() == 0)
+            throw new IllegalArgumentException("--query needs results stored with their heights (--core or --archive), "
+                    + store.getRows().size() + " blocks in the store have none");
+        if (index.getDuplicates() > 0)
+            System.out.println("Heights with more than one block: " + index.getDuplicates());
+        int dash = range.indexOf('-');
+        String a = (dash < 0) ? range : range.substring(0, dash);
+        String b = (dash < 0) ? range : range.substring(dash + 1);
+        int from = a.isEmpty() ? index.getFirstHeight() : Integer.parseInt(a);
+        int to = b.isEmpty() ? index.getLastHeight() : Integer.parseInt(b);
+        if (series != null) {
+            for (int i = 0; i < index.size(); i++) {
+                int h = index.getHeight(i);
+                if ((h >= from) && (h <= to))
+                    series.add(h, index.sum(h, h));
+            }
+        }
+        if (every <= 0)
+            every = to - from + 1;
+        for (int h = from; h <= to; h += every) {
+            int last = Math.min(to, h + every - 1);
+            System.out.println("Heights " + h + "-" + last + " (" + index.countBlocks(h, last) + " blocks):");
+            index.query(h, last).print();
+        }
+    }
 
+    // Usage: BlockAnalysis [blocks] [--parallel[=threads]] [--core=<blocks dir> [--from=height] [--to=height]]
+    //                      [--archive=<base>] [--pack=<base> [--compress]] [--store=<file> [--query=from-to [--every=n]]]
+    //                      [--series=<csv file> [--window=blocks] [--step=blocks]] [--utxo=<file> [--utxo-capacity=n]]
+    //                      [--sample[=precision] [--strata=n] [--tx-fraction=f] [--max-sample=blocks] [--seed=n]]
+    //                      [--columns=<dir>] [--unrecognized=<file>]
+    // Without --core or --archive the 0.bin..(blocks-1).bin files written by FetchLastBlocks are read.
+    // --pack copies the blocks read into an archive instead of analyzing them. With --compress a new
+    // archive is deflated with a dictionary trained on a sample of the blocks.
+    // --store keeps per-block results in a file, so a rerun only analyzes the blocks not seen before.
+    // --query prints the report for a height range from the stored results, without reading blocks.
+    // --series writes the ratios and type shares of the last window blocks (2016) every step blocks (144)
+    // to a CSV file, in a single serial pass. With --query the series is computed from the stored results.
+    // --utxo classifies inputs by the type of the output they spend, using an index of unspent outputs
+    // kept in the given file. Blocks are analyzed serially from the oldest.
+    // --sample estimates the percentages and ratios of the report from random blocks (and a fraction of
+    // their transactions), stopping when every 95% interval is within precision points (0.5) or percent
+    // of the value for ratios. See BlockSampler.
+    // --columns writes every input and output as a row of fixed-width binary columns in the directory,
+    // see ColumnExporter. Blocks are analyzed serially from the oldest.
+    // --unrecognized sets the file listing the inputs that could not be classified, grouped by script
+    // template (unrecognized.txt).
+    public static void main(String[] args) throws BlockStoreException, VerificationException, PrunedException, IOException {
 
-        System.out.println("acInputs =" + acInputs);
-        System.out.println("acOutputs =" + acOutputs);
-        System.out.println("acInputs2 =" + acInputs2);
-        System.out.println("countOutputs2 =" + countOutputs2);
+        NetworkParameters params = MainNetParams.get();
+        Context context = new Context(params);
 
-        System.out.println("countOutputs2[%] =" + getPercent(countOutputs2,acTransactions)+"%"); //81%
+        int numBlocks = 1000;
+        int threads = 0; // serial
+        String coreDir = null;
+        String archive = null;
+        String pack = null;
+        String storeFile = null;
+        String query = null;
+        int every = 0;
+        String seriesFile = null;
+        int window = 2016;
+        int step = 144;
+        String utxoFile = null;
+        long utxoCapacity = UtxoIndex.DEFAULT_CAPACITY;
+        double precision = -1; // no sampling
+        int strata = 16;
+        double txFraction = 1;
+        int maxSample = Integer.MAX_VALUE;
+        long seed = System.nanoTime();
+        String unrecognizedFile = "unrecognized.txt";
+        String columnsDir = null;
+        boolean compress = false;
+        int fromHeight = 0;
+        int toHeight = -1;
+        for (String arg : args) {
+            if (arg.equals("--parallel"))
+                threads = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("--parallel="))
+                threads = Integer.parseInt(arg.substring("--parallel=".length()));
+            else if (arg.startsWith("--core="))
+                coreDir = arg.substring("--core=".length());
+            else if (arg.startsWith("--archive="))
+                archive = arg.substring("--archive=".length());
+            else if (arg.startsWith("--pack="))
+                pack = arg.substring("--pack=".length());
+            else if (arg.startsWith("--store="))
+                storeFile = arg.substring("--store=".length());
+            else if (arg.startsWith("--query="))
+                query = arg.substring("--query=".length());
+            else if (arg.startsWith("--series="))
+                seriesFile = arg.substring("--series=".length());
+            else if (arg.startsWith("--window="))
+                window = Integer.parseInt(arg.substring("--window=".length()));
+            else if (arg.startsWith("--step="))
+                step = Integer.parseInt(arg.substring("--step=".length()));
+            else if (arg.startsWith("--utxo="))
+                utxoFile = arg.substring("--utxo=".length());
+            else if (arg.startsWith("--utxo-capacity="))
+                utxoCapacity = Long.parseLong(arg.substring("--utxo-capacity=".length()));
+            else if (arg.equals("--sample"))
+                precision = 0.5;
+            else if (arg.startsWith("--sample="))
+                precision = Double.parseDouble(arg.substring("--sample=".length()));
+            else if (arg.startsWith("--strata="))
+                strata = Integer.parseInt(arg.substring("--strata=".length()));
+            else if (arg.startsWith("--tx-fraction="))
+                txFraction = Double.parseDouble(arg.substring("--tx-fraction=".length()));
+            else if (arg.startsWith("--max-sample="))
+                maxSample = Integer.parseInt(arg.substring("--max-sample=".length()));
+            else if (arg.startsWith("--seed="))
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            else if (arg.equals("--compress"))
+                compress = true;
+            else if (arg.startsWith("--columns="))
+                columnsDir = arg.substring("--columns=".length());
+            else if (arg.startsWith("--unrecognized="))
+                unrecognizedFile = arg.substring("--unrecognized=".length());
+            else if (arg.startsWith("--every="))
+                every = Integer.parseInt(arg.substring("--every=".length()));
+            else if (arg.startsWith("--from="))
+                fromHeight = Integer.parseInt(arg.substring("--from=".length()));
+            else if (arg.startsWith("--to="))
+                toHeight = Integer.parseInt(arg.substring("--to=".length()));
+            else
+                numBlocks = Integer.parseInt(arg);
+        }
+        if (((fromHeight != 0) || (toHeight != -1)) && (coreDir == null))
+            throw new IllegalArgumentException("--from and --to need --core");
+        if (compress && (pack == null))
+            throw new IllegalArgumentException("--compress needs --pack");
+
+        if (query != null) {
+            if ((storeFile == null) || !new File(storeFile).exists())
+                throw new IllegalArgumentException("--query needs an existing --store");
+            try (BlockStatsStore store = new BlockStatsStore(new File(storeFile));
+                 SeriesWriter series = (seriesFile != null) ? new SeriesWriter(new File(seriesFile), window, step) : null) {
+                query(store, query, every, series);
+            }
+            return;
+        }
 
-        System.out.println("count1i1o="+count1i1o);
-        System.out.println("count1i1o[%]="+getPercent(count1i1o,acTransactions)+"%");
+        BlockSource source;
+        if (coreDir != null) {
+            System.out.println("Indexing " + coreDir);
+            source = new CoreBlockSource(params, new File(coreDir), fromHeight, toHeight);
+            System.out.println("Blocks in range: " + source.size());
+        } else if (archive != null) {
+            source = new BlockArchive(params, new File(archive));
+        } else {
+            source = new BinFileSource(params, null, numBlocks);
+        }
 
-        System.out.println("countNi1o="+countNi1o);
-        System.out.println("countNi1o[%]="+getPercent(countNi1o,acTransactions)+"%");
+        if (pack != null) {
+            pack(source, new File(pack), compress);
+            return;
+        }
 
-        System.out.println("avg. Inputs2/transaction2 =" + acInputs2*1.0/countOutputs2);
-        System.out.println("avg. Inputs/transaction =" + acInputs*1.0/acTransactions);
-        System.out.println("avg. Outputs/transaction =" + acOutputs*1.0/acTransactions);
+        if (precision >= 0) {
+            BlockSampler sampler = new BlockSampler(source, strata, txFraction, seed);
+            Metrics.Reporter reporter = Metrics.startReporter(REPORT_MILLIS);
+            UnrecognizedInputs unrecognized = UnrecognizedInputs.start(new File(unrecognizedFile));
+            try {
+                sampler.run(precision, maxSample);
+            } finally {
+                reporter.close();
+                unrecognized.close();
+            }
+            sampler.print();
+            return;
+        }
 
-        System.out.println("acTransactions =" + acTransactions);
-        System.out.println("Multisigs:");
+        if ((utxoFile != null) && ((threads > 0) || (storeFile != null) || (seriesFile != null)))
+            throw new IllegalArgumentException("--utxo cannot be combined with --parallel, --store or --series");
+        if ((columnsDir != null) && ((threads > 0) || (storeFile != null) || (seriesFile != null)))
+            throw new IllegalArgumentException("--columns cannot be combined with --parallel, --store or --series");
+        if ((utxoFile != null) || (columnsDir != null)) {
+            BlockStats stats;
+            Metrics.Reporter reporter = Metrics.startReporter(REPORT_MILLIS);
+            UnrecognizedInputs unrecognized = UnrecognizedInputs.start(new File(unrecognizedFile));
+            try (UtxoIndex utxo = (utxoFile != null) ? new UtxoIndex(new File(utxoFile), utxoCapacity) : null;
+                 ColumnExporter columns = (columnsDir != null) ? new ColumnExporter(new File(columnsDir)) : null) {
+                stats = analyzeInOrder(source, utxo, columns);
+                if (utxo != null)
+                    System.out.println("Inputs resolved by spent output: " + utxo.getFound() + ", spent outputs not in the index: "
+                            + utxo.getMissing() + ", unspent outputs: " + utxo.size());
+                if (columns != null)
+                    System.out.println("Rows exported to " + columnsDir + ": " + columns.getInputRows() + " inputs, "
+                            + columns.getOutputRows() + " outputs");
+            } finally {
+                reporter.close();
+                unrecognized.close();
+            }
+            stats.print();
+            return;
+        }
 
-        System.out.println("ksi.count="+ksi.count);
-        System.out.println("ksi.acNumSigs="+ksi.acNumSigs);
-        System.out.println("ksi.acNumKeys="+ksi.acNumKeys);
-        System.out.println("ksi.count2of2="+ksi.count2of2);
-        System.out.println("ksi.count2of3="+ksi.count2of3);
-        System.out.println("ksi.acSigSize="+ksi.acSigSize);
-/*
-        System.out.println("kso.count="+kso.count);
-        System.out.println("kso.acNumSigs="+kso.acNumSigs);
-        System.out.println("kso.acNumKeys="+kso.acNumKeys);
-        System.out.println("kso.count2of2="+kso.count2of2);
-        System.out.println("kso.count2of3="+kso.count2of3);
-*/
+        BlockStatsStore store = (storeFile != null) ? new BlockStatsStore(new File(storeFile)) : null;
+        BlockStats stats;
+        Metrics.Reporter reporter = Metrics.startReporter(REPORT_MILLIS);
+        UnrecognizedInputs unrecognized = UnrecognizedInputs.start(new File(unrecognizedFile));
+        try {
+            if (seriesFile != null) {
+                // The window needs the blocks in order
+                try (SeriesWriter series = new SeriesWriter(new File(seriesFile), window, step)) {
+                    stats = writeSeries(source, store, series);
+                }
+            } else if (threads > 0) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    stats = pool.invoke(new AnalyzeTask(context, source, store, 0, source.size()));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                stats = analyzeRange(source, 0, source.size(), store);
+            }
+        } finally {
+            reporter.close();
+            unrecognized.close();
+            if (store != null)
+                store.close();
+        }
+        if (store != null)
+            System.out.println("Blocks analyzed: " + store.getAdded() + ", taken from " + storeFile + ": " + (source.size() - store.getAdded()));
+        stats.print();
+    }
 
-        System.out.println("Inputs:");
-        System.out.println("acInputP2SHSize="+acInputP2SHSize);
-        System.out.println("acInputP2PKH="+acInputP2PKH);
-        System.out.println("acInputP2SH="+acInputP2SH);
-        System.out.println("acInputP2SH_MULTISIG="+acInputP2SH_MULTISIG);
-        System.out.println("acInputP2SH_PK="+acInputP2SH_PK);
-        System.out.println("acInputP2PK="+acInputP2PK);
-        System.out.println("acInputMULTISIG="+acInputMULTISIG);
-        System.out.println("Outputs:");
-        System.out.println("acOpReturn=" + acOpReturn);
-        System.out.println("acSentToCLTVPaymentChannel=" + acSentToCLTVPaymentChannel);
-        System.out.println("acPayToScriptHash=" + acPayToScriptHash);
-        System.out.println("acSentToMultiSig=" + acSentToMultiSig);
-        System.out.println("acSentToAddress=" + acSentToAddress);
-        System.out.println("acSentToRawPubKey=" + acSentToRawPubKey);
-        System.out.println("acUnknown=" + acUnknown);
-        System.out.println("acInvalid=" + acInvalid);
-        System.out.println("acOverlapedTypes="+acOverlapedTypes);
-        int outputSum = acOpReturn + acSentToCLTVPaymentChannel + acPayToScriptHash
-                + acPayToScriptHash + acSentToMultiSig + acSentToAddress
-                + acSentToRawPubKey + acUnknown;
-
-        System.out.println("outputSum=" + acOutputs);
-        System.out.println("Averages------------------------:");
-        System.out.println("Multisigs:");
-        System.out.println("ksi Avg.NumSigs="+ksi.acNumSigs*1.0/ksi.count);
-        System.out.println("ksi Avg.NumKeys="+ksi.acNumKeys*1.0/ksi.count);
-        System.out.println("ksi count2of2="+getPercent(ksi.count2of2,ksi.count)+"%");
-        System.out.println("ksi count2of3="+getPercent(ksi.count2of3,ksi.count)+"%");
-        System.out.println("ksi.Avg SigSize="+ksi.acSigSize*1.0/ksi.count);
-/*
-        System.out.println("kso Avg.NumSigs="+kso.acNumSigs*1.0/kso.count);
-        System.out.println("kso Avg.NumKeys="+kso.acNumKeys*1.0/kso.count);
-        System.out.println("kso count2of2="+getPercent(kso.count2of2,kso.count)+"%");
-        System.out.println("kso count2of3="+getPercent(kso.count2of3,kso.count)+"%");
-*/
-        System.out.println("Inputs:");
-        System.out.println("Avg.InputP2SHSize="+acInputP2SHSize*1.0/acInputP2SH);
-        System.out.println("acInputP2PKH="+getPercent(acInputP2PKH,acInputs)+"%");
-        System.out.println("acInputP2SH="+getPercent(acInputP2SH,acInputs)+"%");
-        System.out.println("acInputP2SH_MULTISIG="+getPercent(acInputP2SH_MULTISIG,acInputs)+"%");
-        System.out.println("acInputP2SH_PK="+getPercent(acInputP2SH_PK,acInputs)+"%");
-        System.out.println("acInputP2PK="+getPercent(acInputP2PK,acInputs)+"%");
-        System.out.println("acInputMULTISIG="+getPercent(acInputMULTISIG,acInputs)+"%");
-
-        System.out.println("Outputs:");
-
-        System.out.println("avOpReturn=" + getPercent(acOpReturn,acOutputs)+"%");
-        System.out.println("avSentToCLTVPaymentChannel=" + getPercent(acSentToCLTVPaymentChannel,acOutputs)+"%");
-        System.out.println("avPayToScriptHash=" + getPercent(acPayToScriptHash,acOutputs)+"%");
-        System.out.println("avSentToMultiSig=" + getPercent(acSentToMultiSig,acOutputs)+"%");
-        System.out.println("avSentToAddress=" + getPercent(acSentToAddress,acOutputs)+"%");
-        System.out.println("avSentToRawPubKey=" + getPercent(acSentToRawPubKey,acOutputs)+"%");
-        System.out.println("avUnknown=" + getPercent(acUnknown,acOutputs)+"%");
-        System.out.println("acInvalid=" + getPercent(acInvalid,acOutputs)+"%");
-        System.out.println("avOverlapedTypes="+getPercent(acOverlapedTypes,acOutputs)+"%");
-
-    }
-
-    static double getPercent(int n,int t) {
+    static double getPercent(long n,long t) {
         return n*100.0/t;
     }
 }
@@ -0,0 +1,400 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Many blocks packed in two files instead of one file per block:
+ * <base>.dat holds the serialized blocks (without message header) one after the other,
+ * and <base>.idx holds one fixed-width record per block: height (int, -1 if unknown),
+ * hash (32 bytes), offset in the data file (long) and length (int).
+ * Records are in the order the blocks were appended. The index is memory mapped, so
+ * locating a block is an array lookup and reading it is a single positional read.
+ * If <base>.dict exists the archive is compressed: each block is stored as its serialized length
+ * (int) followed by the block deflated with the contents of <base>.dict as preset dictionary (see
+ * DictionaryTrainer), and the length in the index is the stored one. getBlockBytes() then inflates
+ * into a buffer of the calling thread, which its next call reuses.
+ */
+public class BlockArchive implements BlockSource, Closeable {
+    public static final int RECORD_SIZE = 4 + 32 + 8 + 4;
+
+    static final int HASH_OFFSET = 4;
+    static final int DATA_OFFSET = 36;
+    static final int LENGTH_OFFSET = 44;
+
+    static final int LEVEL = Deflater.BEST_COMPRESSION;
+    // The data file is mapped in segments starting every SEGMENT_SIZE bytes. Each one extends
+    // MAX_BLOCK_SIZE bytes into the next, so a block is always inside the segment it starts in.
+    static final long SEGMENT_SIZE = 1L << 30;
+    static final int MAX_BLOCK_SIZE = 8 * 1024 * 1024;
+
+    private final NetworkParameters params;
+    private final File dataFile;
+    private final byte[] dictionary; // null if not compressed
+    private final ThreadLocal<Decoder> decoders = new ThreadLocal<>();
+    private final List<Decoder> allDecoders = new ArrayList<>(); // of every thread, ended by close()
+    private final FileChannel data;
+    private final MappedByteBuffer[] segments; // null if compressed
+    private final ByteBuffer index;
+    private final int count;
+    private Map<Sha256Hash, Integer> byHash = null;
+    private Map<Integer, Integer> byHeight = null;
+
+    public static File dataFile(File base) {
+        return new File(base.getPath() + ".dat");
+    }
+
+    public static File indexFile(File base) {
+        return new File(base.getPath() + ".idx");
+    }
+
+    public static File dictionaryFile(File base) {
+        return new File(base.getPath() + ".dict");
+    }
+
+    // Buffers of a thread reading a compressed archive
+    static class Decoder {
+        final Inflater inflater = new Inflater();
+        byte[] in = new byte[0];
+        byte[] out = new byte[0];
+        int size;
+    }
+
+    public BlockArchive(NetworkParameters params, File base) throws IOException {
+        this.params = params;
+        this.dataFile = dataFile(base);
+        this.index = MappedBlockReader.map(indexFile(base));
+        this.count = index.capacity() / RECORD_SIZE;
+        this.data = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+        File dict = dictionaryFile(base);
+        this.dictionary = dict.exists() ? Files.readAllBytes(dict.toPath()) : null;
+        this.segments = (dictionary == null) ? mapSegments(data) : null;
+    }
+
+    private static MappedByteBuffer[] mapSegments(FileChannel data) throws IOException {
+        long size = data.size();
+        MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int k = 0; k < segments.length; k++) {
+            long start = k * SEGMENT_SIZE;
+            segments[k] = data.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE + MAX_BLOCK_SIZE, size - start));
+        }
+        return segments;
+    }
+
+    public boolean isCompressed() {
+        return dictionary != null;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int getHeight(int i) {
+        return index.getInt(i * RECORD_SIZE);
+    }
+
+    @Override
+    public Sha256Hash getHash(int i) {
+        byte[] hash = new byte[32];
+        ByteBuffer record = index.duplicate();
+        record.position(i * RECORD_SIZE + HASH_OFFSET);
+        record.get(hash);
+        return Sha256Hash.wrap(hash);
+    }
+
+    public long getOffset(int i) {
+        return index.getLong(i * RECORD_SIZE + DATA_OFFSET);
+    }
+
+    public int getLength(int i) {
+        return index.getInt(i * RECORD_SIZE + LENGTH_OFFSET);
+    }
+
+    // The serialized block, without message header
+    public byte[] readBytes(int i) throws IOException {
+        if (dictionary != null) {
+            Decoder d = decode(i);
+            return Arrays.copyOf(d.out, d.size);
+        }
+        byte[] bytes = new byte[getLength(i)];
+        readFully(data, ByteBuffer.wrap(bytes), getOffset(i));
+        return bytes;
+    }
+
+    // A slice of the mapped data file, or the block inflated if the archive is compressed
+    @Override
+    public ByteBuffer getBlockBytes(int i) throws IOException {
+        if (dictionary != null) {
+            Decoder d = decode(i);
+            return ByteBuffer.wrap(d.out, 0, d.size);
+        }
+        long offset = getOffset(i);
+        int length = getLength(i);
+        if (length > MAX_BLOCK_SIZE)
+            return data.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        ByteBuffer block = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+        int position = (int) (offset % SEGMENT_SIZE);
+        block.limit(position + length);
+        block.position(position);
+        return block.slice();
+    }
+
+    // Reads and inflates block i into the buffers of the calling thread
+    private Decoder decode(int i) throws IOException {
+        Decoder d = decoders.get();
+        if (d == null) {
+            d = new Decoder();
+            decoders.set(d);
+            synchronized (allDecoders) {
+                allDecoders.add(d);
+            }
+        }
+        int length = getLength(i);
+        if (d.in.length < length)
+            d.in = new byte[Math.max(length, d.in.length * 2)];
+        readFully(data, ByteBuffer.wrap(d.in, 0, length), getOffset(i));
+        d.size = ByteBuffer.wrap(d.in).getInt();
+        if (d.out.length < d.size)
+            d.out = new byte[Math.max(d.size, d.out.length * 2)];
+        Inflater inflater = d.inflater;
+        inflater.reset();
+        inflater.setInput(d.in, 4, length - 4);
+        int n = 0;
+        try {
+            while (n < d.size) {
+                int r = inflater.inflate(d.out, n, d.size - n);
+                if (r == 0) {
+                    if (inflater.needsDictionary())
+                        inflater.setDictionary(dictionary);
+                    else if (inflater.finished() || inflater.needsInput())
+                        break;
+                }
+                n += r;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Cannot inflate " + getName(i) + " of " + dataFile, e);
+        }
+        if (n != d.size)
+            throw new IOException("Truncated " + getName(i) + " in " + dataFile);
+        return d;
+    }
+
+    @Override
+    public Block getBlock(int i) throws IOException {
+        try {
+            return StreamingBlockReader.makeBlock(params, ByteBuffer.wrap(readBytes(i)));
+        } catch (ProtocolException e) {
+            throw new IOException("Cannot parse " + getName(i) + " of " + dataFile, e);
+        }
+    }
+
+    @Override
+    public String getName(int i) {
+        int height = getHeight(i);
+        return (height >= 0) ? "height " + height : "record " + i;
+    }
+
+    // Position of the block with this hash, or -1
+    public synchronized int indexOf(Sha256Hash hash) {
+        if (byHash == null) {
+            byHash = new HashMap<>();
+            for (int i = 0; i < count; i++)
+                byHash.put(getHash(i), i);
+        }
+        Integer i = byHash.get(hash);
+        return (i == null) ? -1 : i;
+    }
+
+    // Position of the block at this height, or -1
+    public synchronized int indexOfHeight(int height) {
+        if (byHeight == null) {
+            byHeight = new HashMap<>();
+            for (int i = 0; i < count; i++)
+                byHeight.put(getHeight(i), i);
+        }
+        Integer i = byHeight.get(height);
+        return (i == null) ? -1 : i;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (allDecoders) {
+            for (Decoder d : allDecoders)
+                d.inflater.end();
+            allDecoders.clear();
+        }
+        data.close();
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0)
+                throw new EOFException("Unexpected end of block archive");
+            position += n;
+        }
+    }
+
+    /**
+     * Appends blocks to an archive, creating it if needed.
+     * If a previous writer was interrupted, the data written after the last complete
+     * index record is discarded.
+     * An existing archive keeps its format. A new one is compressed if a dictionary is given.
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel data;
+        private final FileChannel index;
+        private final Set<Sha256Hash> hashes = new HashSet<>();
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        private long dataEnd;
+        private final byte[] dictionary;
+        private final Deflater deflater;
+        private byte[] compressed = new byte[0];
+        private long serializedBytes = 0;
+        private long storedBytes = 0;
+
+        public Writer(File base) throws IOException {
+            this(base, null);
+        }
+
+        public Writer(File base, byte[] dictionary) throws IOException {
+            data = FileChannel.open(dataFile(base).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(indexFile(base).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long records = index.size() / RECORD_SIZE;
+            index.truncate(records * RECORD_SIZE);
+            dataEnd = 0;
+            byte[] hash = new byte[32];
+            for (long i = 0; i < records; i++) {
+                record.clear();
+                readFully(index, record, i * RECORD_SIZE);
+                record.position(HASH_OFFSET);
+                record.get(hash);
+                hashes.add(Sha256Hash.wrap(hash.clone()));
+                dataEnd = Math.max(dataEnd, record.getLong(DATA_OFFSET) + record.getInt(LENGTH_OFFSET));
+            }
+            data.truncate(dataEnd);
+            File dict = dictionaryFile(base);
+            if (dict.exists()) {
+                this.dictionary = Files.readAllBytes(dict.toPath());
+            } else if ((dictionary != null) && (records == 0)) {
+                Files.write(dict.toPath(), dictionary);
+                this.dictionary = dictionary;
+            } else if (dictionary != null) {
+                data.close();
+                index.close();
+                throw new IOException(base + " already holds uncompressed blocks and cannot be compressed");
+            } else {
+                this.dictionary = null;
+            }
+            deflater = (this.dictionary != null) ? new Deflater(LEVEL) : null;
+        }
+
+        public boolean isCompressed() {
+            return dictionary != null;
+        }
+
+        public boolean contains(Sha256Hash hash) {
+            return hashes.contains(hash);
+        }
+
+        public int size() {
+            return hashes.size();
+        }
+
+        // Appends the block unless it is already in the archive. height is -1 if unknown.
+        public void append(int height, Block block) throws IOException {
+            if (!hashes.contains(block.getHash()))
+                append(height, block.getHash(), ByteBuffer.wrap(block.bitcoinSerialize()));
+        }
+
+        // Same for a serialized block, from the position to the limit of the buffer, which is stored
+        // as it is: witnesses included, unlike a Block parsed by bitcoinj
+        public void append(int height, Sha256Hash hash, ByteBuffer serializedBlock) throws IOException {
+            if (hashes.contains(hash))
+                return;
+            long start = System.nanoTime();
+            byte[] bytes = new byte[serializedBlock.remaining()];
+            serializedBlock.duplicate().get(bytes);
+            ByteBuffer buf = (deflater != null) ? compress(bytes) : ByteBuffer.wrap(bytes);
+            int length = buf.remaining();
+            while (buf.hasRemaining())
+                data.write(buf, dataEnd + buf.position());
+
+            record.clear();
+            record.putInt(height);
+            record.put(hash.getBytes());
+            record.putLong(dataEnd);
+            record.putInt(length);
+            record.flip();
+            long indexEnd = (long) hashes.size() * RECORD_SIZE;
+            while (record.hasRemaining())
+                index.write(record, indexEnd + record.position());
+
+            dataEnd += length;
+            hashes.add(hash);
+            serializedBytes += bytes.length;
+            storedBytes += length;
+            Metrics.blockExported(hash.toString(), length, System.nanoTime() - start);
+        }
+
+        // The serialized length followed by the deflated block, in a buffer reused by the next call
+        private ByteBuffer compress(byte[] bytes) {
+            deflater.reset();
+            if (dictionary.length > 0)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(bytes);
+            deflater.finish();
+            if (compressed.length < bytes.length + 64)
+                compressed = new byte[bytes.length + bytes.length / 8 + 64];
+            ByteBuffer.wrap(compressed).putInt(bytes.length);
+            int n = 4;
+            while (!deflater.finished()) {
+                if (n == compressed.length)
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                n += deflater.deflate(compressed, n, compressed.length - n);
+            }
+            return ByteBuffer.wrap(compressed, 0, n);
+        }
+
+        // Bytes of the blocks appended by this writer, serialized and as written
+        public long getSerializedBytes() {
+            return serializedBytes;
+        }
+
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deflater != null)
+                deflater.end();
+            data.close();
+            index.close();
+        }
+    }
+}
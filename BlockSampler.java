@@ -0,0 +1,250 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ProtocolException;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Estimates the percentages and ratios of the BlockStats report from a random sample of blocks,
+ * with 95% confidence intervals, stopping as soon as every interval is narrow enough.
+ * The blocks of the source are split in equal strata of consecutive positions (i.e. periods of
+ * the chain) and blocks are drawn without replacement, one per stratum in turn, so every period
+ * is represented from the start. Each ratio is estimated as a combined stratified ratio
+ * estimator, with the blocks as clusters.
+ * Optionally only a random fraction of the transactions of each sampled block is analyzed. As the
+ * same fraction applies to every block the ratios are unaffected, but the intervals, computed from
+ * the subsampled block totals, account for that second stage only approximately.
+ */
+public class BlockSampler {
+    static final double Z_95 = 1.959964;
+    // Intervals are not trusted before every stratum has this many blocks
+    static final int MIN_PER_STRATUM = 2;
+
+    // numerator / denominator of BlockStats counters; percentages are shown and compared times 100
+    static class Ratio {
+        final String name;
+        final int[] numerator;
+        final int[] denominator;
+        final boolean percent;
+
+        Ratio(String name, String numerator, String denominator, boolean percent) {
+            this(name, new String[] {numerator}, new String[] {denominator}, percent);
+        }
+
+        Ratio(String name, String[] numerator, String[] denominator, boolean percent) {
+            this.name = name;
+            this.numerator = fields(numerator);
+            this.denominator = fields(denominator);
+            this.percent = percent;
+        }
+    }
+
+    static double sum(long[] counters, int[] fields) {
+        long v = 0;
+        for (int f : fields)
+            v += counters[f];
+        return v;
+    }
+
+    static final Ratio[] RATIOS = {
+            new Ratio("Ratio seg/noseg", "acSegwitSpace", "acMainChainSpace", false),
+            new Ratio("Ratio SegNoSeg/total", new String[] {"acTotalSize"}, new String[] {"acMainChainSpace", "acSegwitSpace"}, false),
+            new Ratio("avg. Inputs/transaction", "acInputs", "acTransactions", false),
+            new Ratio("avg. Outputs/transaction", "acOutputs", "acTransactions", false),
+            new Ratio("acInputP2PKH", "acInputP2PKH", "acInputs", true),
+            new Ratio("acInputP2SH", "acInputP2SH", "acInputs", true),
+            new Ratio("acInputP2SH_MULTISIG", "acInputP2SH_MULTISIG", "acInputs", true),
+            new Ratio("acInputP2SH_PK", "acInputP2SH_PK", "acInputs", true),
+            new Ratio("acInputP2PK", "acInputP2PK", "acInputs", true),
+            new Ratio("acInputMULTISIG", "acInputMULTISIG", "acInputs", true),
+            new Ratio("avOpReturn", "acOpReturn", "acOutputs", true),
+            new Ratio("avSentToCLTVPaymentChannel", "acSentToCLTVPaymentChannel", "acOutputs", true),
+            new Ratio("avPayToScriptHash", "acPayToScriptHash", "acOutputs", true),
+            new Ratio("avSentToMultiSig", "acSentToMultiSig", "acOutputs", true),
+            new Ratio("avSentToAddress", "acSentToAddress", "acOutputs", true),
+            new Ratio("avSentToRawPubKey", "acSentToRawPubKey", "acOutputs", true),
+            new Ratio("avUnknown", "acUnknown", "acOutputs", true),
+            new Ratio("Measured witness/base", "acWitnessSize", "acBaseSize", false),
+    };
+
+    static int[] fields(String[] names) {
+        int[] result = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = -1;
+            for (int f = 0; f < BlockStats.FIELD_COUNT; f++) {
+                if (BlockStats.FIELD_NAMES[f].equals(names[i]))
+                    result[i] = f;
+            }
+            if (result[i] < 0)
+                throw new IllegalArgumentException("No counter " + names[i]);
+        }
+        return result;
+    }
+
+    private final BlockSource source;
+    private final double txFraction;
+    private final Random random;
+    // Positions of the blocks of stratum h not sampled yet are order[start[h] + taken[h]..start[h + 1])
+    private final int[] order;
+    private final int[] start;
+    private final int[] taken;
+    // Per ratio and stratum: sums of y (numerator), x (denominator), y*y, x*x and x*y over the blocks
+    private final double[][] sy, sx, syy, sxx, sxy;
+    private int sampled = 0;
+    private long transactions = 0;
+
+    public BlockSampler(BlockSource source, int strata, double txFraction, long seed) {
+        this.source = source;
+        this.txFraction = txFraction;
+        this.random = new Random(seed);
+        int n = source.size();
+        strata = Math.max(1, Math.min(strata, n / MIN_PER_STRATUM));
+        order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        start = new int[strata + 1];
+        for (int h = 0; h <= strata; h++)
+            start[h] = (int) ((long) n * h / strata);
+        taken = new int[strata];
+        sy = new double[RATIOS.length][strata];
+        sx = new double[RATIOS.length][strata];
+        syy = new double[RATIOS.length][strata];
+        sxx = new double[RATIOS.length][strata];
+        sxy = new double[RATIOS.length][strata];
+    }
+
+    // Samples blocks until every interval is within precision (percentage points for percentages,
+    // percent of the value for ratios), or maxBlocks blocks, or the whole source, were analyzed
+    public void run(double precision, int maxBlocks) throws IOException {
+        StreamingBlockReader reader = new StreamingBlockReader(Context.get().getParams());
+        int strata = taken.length;
+        while ((sampled < maxBlocks) && (sampled < order.length)) {
+            for (int h = 0; (h < strata) && (sampled < maxBlocks); h++) {
+                int size = start[h + 1] - start[h];
+                if (taken[h] == size)
+                    continue;
+                // Partial Fisher-Yates shuffle of the stratum
+                int pick = start[h] + taken[h] + random.nextInt(size - taken[h]);
+                int bn = order[pick];
+                order[pick] = order[start[h] + taken[h]];
+                order[start[h] + taken[h]] = bn;
+                taken[h]++;
+                add(h, analyze(reader, bn));
+            }
+            if (isPrecise(precision))
+                break;
+        }
+    }
+
+    private long[] analyze(StreamingBlockReader reader, int bn) throws IOException {
+        BlockStats s = new BlockStats();
+        try {
+            long begin = System.nanoTime();
+            reader.open(source.getBlockBytes(bn));
+            int count = reader.getTransactionCount();
+            for (int i = 0; reader.hasNext(); i++) {
+                if ((txFraction < 1) && (random.nextDouble() >= txFraction)) {
+                    reader.skip();
+                    continue;
+                }
+                s.acTransactions++;
+                BlockAnalysis.analyzeTransaction(reader.next(), i, s);
+                s.addMeasuredSize(reader);
+            }
+            transactions += s.acTransactions;
+            Metrics.blockAnalyzed(source.getName(bn), count, System.nanoTime() - begin);
+        } catch (ProtocolException e) {
+            throw new IOException("Cannot parse block " + source.getName(bn), e);
+        }
+        return s.toArray();
+    }
+
+    private void add(int h, long[] counters) {
+        sampled++;
+        for (int r = 0; r < RATIOS.length; r++) {
+            double y = sum(counters, RATIOS[r].numerator);
+            double x = sum(counters, RATIOS[r].denominator);
+            sy[r][h] += y;
+            sx[r][h] += x;
+            syy[r][h] += y * y;
+            sxx[r][h] += x * x;
+            sxy[r][h] += x * y;
+        }
+    }
+
+    private int strataSize(int h) {
+        return start[h + 1] - start[h];
+    }
+
+    // Estimated totals of the numerator (0) and denominator (1) over the whole source
+    private double[] totals(int r) {
+        double y = 0;
+        double x = 0;
+        for (int h = 0; h < taken.length; h++) {
+            if (taken[h] == 0)
+                continue;
+            y += strataSize(h) * sy[r][h] / taken[h];
+            x += strataSize(h) * sx[r][h] / taken[h];
+        }
+        return new double[] {y, x};
+    }
+
+    public double estimate(int r) {
+        double[] t = totals(r);
+        return t[0] / t[1];
+    }
+
+    // Half width of the 95% confidence interval of the estimate, NaN until every stratum has enough blocks
+    public double halfWidth(int r) {
+        double[] t = totals(r);
+        double ratio = t[0] / t[1];
+        double variance = 0;
+        for (int h = 0; h < taken.length; h++) {
+            int n = taken[h];
+            int size = strataSize(h);
+            if (n == size)
+                continue; // stratum fully analyzed, no sampling error
+            if (n < MIN_PER_STRATUM)
+                return Double.NaN;
+            double meanD = (sy[r][h] - ratio * sx[r][h]) / n;
+            double sumD2 = syy[r][h] - 2 * ratio * sxy[r][h] + ratio * ratio * sxx[r][h];
+            double s2 = Math.max(0, (sumD2 - n * meanD * meanD) / (n - 1));
+            variance += (double) size * size * (1 - (double) n / size) * s2 / n;
+        }
+        return Z_95 * Math.sqrt(variance) / t[1];
+    }
+
+    boolean isPrecise(double precision) {
+        for (int r = 0; r < RATIOS.length; r++) {
+            double estimate = estimate(r);
+            // A ratio without denominator in the sample (e.g. no outputs) does not hold the run
+            if (Double.isNaN(estimate) || Double.isInfinite(estimate))
+                continue;
+            double half = halfWidth(r);
+            if (Double.isNaN(half))
+                return false;
+            double limit = RATIOS[r].percent ? precision / 100 : precision / 100 * Math.abs(estimate);
+            if (half > limit)
+                return false;
+        }
+        return true;
+    }
+
+    public int getSampled() {
+        return sampled;
+    }
+
+    public void print() {
+        System.out.println("Sampled " + sampled + " of " + order.length + " blocks in " + taken.length + " strata, "
+                + transactions + " transactions analyzed, 95% confidence intervals:");
+        for (int r = 0; r < RATIOS.length; r++) {
+            double scale = RATIOS[r].percent ? 100 : 1;
+            String unit = RATIOS[r].percent ? "%" : "";
+            System.out.println(String.format(Locale.US, "%s=%.4f%s +- %.4f%s", RATIOS[r].name,
+                    estimate(r) * scale, unit, halfWidth(r) * scale, unit));
+        }
+    }
+}
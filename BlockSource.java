@@ -0,0 +1,31 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A sequence of blocks to analyze, addressed by position (0..size()-1).
+ * Implementations must allow getBlock() to be called concurrently from several threads.
+ */
+public interface BlockSource {
+    int size();
+
+    Block getBlock(int index) throws IOException;
+
+    // The serialized block at index, from the position to the limit of the returned buffer.
+    // The buffer may be a view of a mapping shared with other callers, or a buffer of the calling
+    // thread that its next call overwrites (compressed BlockArchive): use it before the next call.
+    ByteBuffer getBlockBytes(int index) throws IOException;
+
+    // Hash of the block at index, obtained without deserializing the whole block
+    Sha256Hash getHash(int index) throws IOException;
+
+    // Height of the block at index, or -1 if the source does not know it
+    int getHeight(int index);
+
+    // Short description of the block at index, for progress messages
+    String getName(int index);
+}
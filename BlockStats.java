@@ -0,0 +1,447 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.tools.BlockAnalysis.KeyStats;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.bitcoinj.tools.BlockAnalysis.getPercent;
+
+/**
+ * Counters collected by BlockAnalysis over a block or a range of blocks.
+ * Results of disjoint ranges are combined with merge(), so the totals are
+ * the same whether the blocks were analyzed serially or in parallel.
+ * The distributions (histograms and multisig shapes) are not part of toArray(), so results
+ * taken from a BlockStatsStore only add to the counters. print() leaves them out when any
+ * block came from the store, rather than showing them for part of the blocks.
+ */
+public class BlockStats {
+    long acInputs = 0;
+    long acOutputs = 0;
+    long acInputs2 =0; // inputs, for transactions with 2 outputs
+    long countOutputs2=0;
+    long count1i1o= 0;
+    long countNi1o= 0;
+    long acOpReturn = 0;
+    long acSentToCLTVPaymentChannel = 0;
+    long acPayToScriptHash = 0;
+    long acSentToMultiSig = 0;
+    long acSentToAddress = 0;
+    long acSentToRawPubKey = 0;
+    long acTransactions = 0;
+    long acUnknown = 0;
+    long acInvalid =0;
+    long acOverlapedTypes =0;
+    long acInputP2PKH =0;
+    long acInputP2SH_MULTISIG =0;
+    long acInputP2SH=0;
+    long acInputP2SH_PK =0;
+    long acInputP2PK=0;
+    long acInputP2PKXX=0;
+    long acInputMULTISIG=0;
+    long acInputP2SHSize=0;
+
+    long acMainChainSpace =0;
+    long acSegwitSpace=0;
+    long acTotalSize=0;
+
+    // Real sizes, measured on the serialized transactions (see StreamingBlockReader); 0 when the
+    // blocks were analyzed as deserialized Blocks
+    long acSegwitTransactions=0;
+    long acBaseSize=0;
+    long acWitnessSize=0;
+    long acWeight=0;
+
+    KeyStats ksi = new KeyStats();
+    KeyStats kso = new KeyStats();
+
+    // Some of the blocks only have their counters (fromArray()), not the fields below
+    boolean countersOnly = false;
+
+    // scriptSigSize[k] = scriptSig sizes of the inputs with type flag 1 << k, see InputClassifier.TYPE_NAMES
+    final Histogram[] scriptSigSize = new Histogram[InputClassifier.TYPE_NAMES.length];
+    final Histogram redeemScriptSize = new Histogram(); // P2SH inputs
+    final Histogram inputsPerTransaction = new Histogram();
+    final Histogram outputsPerTransaction = new Histogram();
+    final TemplateSketch scriptSigTemplates = new TemplateSketch(); // all inputs but coinbases
+    final HyperLogLog distinctRedeemScripts = new HyperLogLog(); // P2SH inputs
+    final HyperLogLog distinctAddresses = new HyperLogLog(); // key hashes of P2PKH outputs
+    final HyperLogLog distinctScriptHashes = new HyperLogLog(); // script hashes of P2SH outputs
+    final TemplateSketch otherRedeemScriptTemplates = new TemplateSketch(); // P2SH inputs neither P2SH_MULTISIG nor P2SH_PK
+
+    // Space under each of SpaceModel.MODELS, in the same order. Not part of toArray() either.
+    final double[] modelMainChain = new double[SpaceModel.MODELS.length];
+    final double[] modelWitness = new double[SpaceModel.MODELS.length];
+    // Chunks of the scriptSigs of the transaction being analyzed
+    final ScriptPushes pushes = new ScriptPushes();
+    // Witness bytes of the inputs of the transaction being analyzed, per model
+    private final double[] txWitness = new double[SpaceModel.MODELS.length];
+    // Transactions left before the next one whose classification is timed (the first after the coinbase)
+    private int untilTimed = 1;
+
+    static final int TOP_TEMPLATES = 10;
+
+    public BlockStats() {
+        for (int k = 0; k < scriptSigSize.length; k++)
+            scriptSigSize[k] = new Histogram();
+    }
+
+    // Order of the counters in toArray(), used to store and index per-block results
+    public static final String[] FIELD_NAMES = {
+            "acInputs", "acOutputs", "acInputs2", "countOutputs2",
+            "count1i1o", "countNi1o", "acOpReturn", "acSentToCLTVPaymentChannel",
+            "acPayToScriptHash", "acSentToMultiSig", "acSentToAddress", "acSentToRawPubKey",
+            "acTransactions", "acUnknown", "acInvalid", "acOverlapedTypes",
+            "acInputP2PKH", "acInputP2SH_MULTISIG", "acInputP2SH", "acInputP2SH_PK",
+            "acInputP2PK", "acInputP2PKXX", "acInputMULTISIG", "acInputP2SHSize",
+            "acMainChainSpace", "acSegwitSpace", "acTotalSize", "ksi.count",
+            "ksi.acNumKeys", "ksi.acNumSigs", "ksi.count2of3", "ksi.count2of2",
+            "ksi.acSigSize", "kso.count", "kso.acNumKeys", "kso.acNumSigs",
+            "kso.count2of3", "kso.count2of2", "kso.acSigSize", "acSegwitTransactions",
+            "acBaseSize", "acWitnessSize", "acWeight"
+    };
+    public static final int FIELD_COUNT = FIELD_NAMES.length;
+    // Version of the classification behind the counters, stored with them. Increase it whenever the
+    // same block would be counted differently, since the number of counters alone does not show it.
+    // 2: signature length bytes read as unsigned
+    public static final int CLASSIFIER_VERSION = 2;
+
+    public long[] toArray() {
+        return new long[] {
+                acInputs, acOutputs, acInputs2, countOutputs2,
+                count1i1o, countNi1o, acOpReturn, acSentToCLTVPaymentChannel,
+                acPayToScriptHash, acSentToMultiSig, acSentToAddress, acSentToRawPubKey,
+                acTransactions, acUnknown, acInvalid, acOverlapedTypes,
+                acInputP2PKH, acInputP2SH_MULTISIG, acInputP2SH, acInputP2SH_PK,
+                acInputP2PK, acInputP2PKXX, acInputMULTISIG, acInputP2SHSize,
+                acMainChainSpace, acSegwitSpace, acTotalSize, ksi.count,
+                ksi.acNumKeys, ksi.acNumSigs, ksi.count2of3, ksi.count2of2,
+                ksi.acSigSize, kso.count, kso.acNumKeys, kso.acNumSigs,
+                kso.count2of3, kso.count2of2, kso.acSigSize, acSegwitTransactions,
+                acBaseSize, acWitnessSize, acWeight
+        };
+    }
+
+    public static BlockStats fromArray(long[] v) {
+        BlockStats s = new BlockStats();
+        s.countersOnly = true;
+        s.acInputs = v[0];
+        s.acOutputs = v[1];
+        s.acInputs2 = v[2];
+        s.countOutputs2 = v[3];
+        s.count1i1o = v[4];
+        s.countNi1o = v[5];
+        s.acOpReturn = v[6];
+        s.acSentToCLTVPaymentChannel = v[7];
+        s.acPayToScriptHash = v[8];
+        s.acSentToMultiSig = v[9];
+        s.acSentToAddress = v[10];
+        s.acSentToRawPubKey = v[11];
+        s.acTransactions = v[12];
+        s.acUnknown = v[13];
+        s.acInvalid = v[14];
+        s.acOverlapedTypes = v[15];
+        s.acInputP2PKH = v[16];
+        s.acInputP2SH_MULTISIG = v[17];
+        s.acInputP2SH = v[18];
+        s.acInputP2SH_PK = v[19];
+        s.acInputP2PK = v[20];
+        s.acInputP2PKXX = v[21];
+        s.acInputMULTISIG = v[22];
+        s.acInputP2SHSize = v[23];
+        s.acMainChainSpace = v[24];
+        s.acSegwitSpace = v[25];
+        s.acTotalSize = v[26];
+        s.ksi.count = v[27];
+        s.ksi.acNumKeys = v[28];
+        s.ksi.acNumSigs = v[29];
+        s.ksi.count2of3 = v[30];
+        s.ksi.count2of2 = v[31];
+        s.ksi.acSigSize = v[32];
+        s.kso.count = v[33];
+        s.kso.acNumKeys = v[34];
+        s.kso.acNumSigs = v[35];
+        s.kso.count2of3 = v[36];
+        s.kso.count2of2 = v[37];
+        s.kso.acSigSize = v[38];
+        s.acSegwitTransactions = v[39];
+        s.acBaseSize = v[40];
+        s.acWitnessSize = v[41];
+        s.acWeight = v[42];
+        return s;
+    }
+
+    // Adds the counters of o to this object and returns this
+    public BlockStats merge(BlockStats o) {
+        acInputs += o.acInputs;
+        acOutputs += o.acOutputs;
+        acInputs2 += o.acInputs2;
+        countOutputs2 += o.countOutputs2;
+        count1i1o += o.count1i1o;
+        countNi1o += o.countNi1o;
+        acOpReturn += o.acOpReturn;
+        acSentToCLTVPaymentChannel += o.acSentToCLTVPaymentChannel;
+        acPayToScriptHash += o.acPayToScriptHash;
+        acSentToMultiSig += o.acSentToMultiSig;
+        acSentToAddress += o.acSentToAddress;
+        acSentToRawPubKey += o.acSentToRawPubKey;
+        acTransactions += o.acTransactions;
+        acUnknown += o.acUnknown;
+        acInvalid += o.acInvalid;
+        acOverlapedTypes += o.acOverlapedTypes;
+        acInputP2PKH += o.acInputP2PKH;
+        acInputP2SH_MULTISIG += o.acInputP2SH_MULTISIG;
+        acInputP2SH += o.acInputP2SH;
+        acInputP2SH_PK += o.acInputP2SH_PK;
+        acInputP2PK += o.acInputP2PK;
+        acInputP2PKXX += o.acInputP2PKXX;
+        acInputMULTISIG += o.acInputMULTISIG;
+        acInputP2SHSize += o.acInputP2SHSize;
+        acMainChainSpace += o.acMainChainSpace;
+        acSegwitSpace += o.acSegwitSpace;
+        acTotalSize += o.acTotalSize;
+        acSegwitTransactions += o.acSegwitTransactions;
+        acBaseSize += o.acBaseSize;
+        acWitnessSize += o.acWitnessSize;
+        acWeight += o.acWeight;
+        countersOnly |= o.countersOnly;
+        ksi.merge(o.ksi);
+        kso.merge(o.kso);
+        for (int k = 0; k < scriptSigSize.length; k++)
+            scriptSigSize[k].merge(o.scriptSigSize[k]);
+        redeemScriptSize.merge(o.redeemScriptSize);
+        inputsPerTransaction.merge(o.inputsPerTransaction);
+        outputsPerTransaction.merge(o.outputsPerTransaction);
+        scriptSigTemplates.merge(o.scriptSigTemplates);
+        distinctRedeemScripts.merge(o.distinctRedeemScripts);
+        distinctAddresses.merge(o.distinctAddresses);
+        distinctScriptHashes.merge(o.distinctScriptHashes);
+        otherRedeemScriptTemplates.merge(o.otherRedeemScriptTemplates);
+        for (int m = 0; m < modelMainChain.length; m++) {
+            modelMainChain[m] += o.modelMainChain[m];
+            modelWitness[m] += o.modelWitness[m];
+        }
+        return this;
+    }
+
+    // Space of a transaction, input by input and output by output, under every model.
+    // SpaceModel.ORIGINAL also goes to acMainChainSpace and acSegwitSpace.
+    void startTransactionSpace() {
+        acMainChainSpace += (long) SpaceModel.ORIGINAL.transactionMainChain();
+        for (int m = 0; m < SpaceModel.MODELS.length; m++) {
+            modelMainChain[m] += SpaceModel.MODELS[m].transactionMainChain();
+            txWitness[m] = 0;
+        }
+    }
+
+    void addInputSpace(int type, int scriptSigSize) {
+        acMainChainSpace += (long) SpaceModel.ORIGINAL.inputMainChain(type, scriptSigSize);
+        acSegwitSpace += (long) SpaceModel.ORIGINAL.inputWitness(type, scriptSigSize);
+        for (int m = 0; m < SpaceModel.MODELS.length; m++) {
+            modelMainChain[m] += SpaceModel.MODELS[m].inputMainChain(type, scriptSigSize);
+            txWitness[m] += SpaceModel.MODELS[m].inputWitness(type, scriptSigSize);
+        }
+    }
+
+    void addOutputSpace(int type, int scriptSize) {
+        acMainChainSpace += (long) SpaceModel.ORIGINAL.outputMainChain(type, scriptSize);
+        for (int m = 0; m < SpaceModel.MODELS.length; m++)
+            modelMainChain[m] += SpaceModel.MODELS[m].outputMainChain(type, scriptSize);
+    }
+
+    // True for one transaction in Metrics.CLASSIFY_SAMPLE
+    boolean nextTransactionTimed() {
+        if (untilTimed > 0) {
+            untilTimed--;
+            return false;
+        }
+        untilTimed = Metrics.CLASSIFY_SAMPLE - 1;
+        return true;
+    }
+
+    // Real sizes of a transaction as serialized in its block
+    void addMeasuredSize(StreamingBlockReader reader) {
+        if (reader.getWitnessSize() > 0)
+            acSegwitTransactions++;
+        acTotalSize += reader.getTotalSize();
+        acBaseSize += reader.getBaseSize();
+        acWitnessSize += reader.getWitnessSize();
+        acWeight += reader.getWeight();
+    }
+
+    void endTransactionSpace() {
+        for (int m = 0; m < SpaceModel.MODELS.length; m++) {
+            if (txWitness[m] > 0)
+                modelWitness[m] += txWitness[m] + SpaceModel.MODELS[m].transactionWitness();
+        }
+    }
+
+    public void print() {
+        // Result
+        System.out.println("Result:");
+        if (countersOnly)
+            System.out.println("(Stored results only keep the counters, so what needs more than the counters is left out)");
+        System.out.println("acTotalSize =" + acTotalSize);
+        long segNoSegSize = acMainChainSpace+acSegwitSpace;
+
+        System.out.println("segNoSegSize (seg+noseg) =" + segNoSegSize );
+        System.out.println("Ratio SegNoSeg/total=" + 1.0 * acTotalSize / segNoSegSize);
+
+
+        System.out.println("acMainChainSpace =" + acMainChainSpace);
+        System.out.println("acSegwitSpace =" + acSegwitSpace);
+        System.out.println("Ratio seg/noseg=" + 1.0 * acSegwitSpace / acMainChainSpace);
+        if (acWeight > 0) {
+            // What the blocks really take, to compare with the estimate above
+            System.out.println("Measured: segwitTransactions=" + getPercent(acSegwitTransactions, acTransactions) + "%"
+                    + " baseSize=" + acBaseSize + " witnessSize=" + acWitnessSize
+                    + " weight=" + acWeight + " vsize=" + (acWeight + 3) / 4);
+            System.out.println("Measured ratio witness/base=" + 1.0 * acWitnessSize / acBaseSize);
+        }
+
+
+        System.out.println("acInputs =" + acInputs);
+        System.out.println("acOutputs =" + acOutputs);
+        System.out.println("acInputs2 =" + acInputs2);
+        System.out.println("countOutputs2 =" + countOutputs2);
+
+        System.out.println("countOutputs2[%] =" + getPercent(countOutputs2,acTransactions)+"%"); //81%
+
+        System.out.println("count1i1o="+count1i1o);
+        System.out.println("count1i1o[%]="+getPercent(count1i1o,acTransactions)+"%");
+
+        System.out.println("countNi1o="+countNi1o);
+        System.out.println("countNi1o[%]="+getPercent(countNi1o,acTransactions)+"%");
+
+        System.out.println("avg. Inputs2/transaction2 =" + acInputs2*1.0/countOutputs2);
+        System.out.println("avg. Inputs/transaction =" + acInputs*1.0/acTransactions);
+        System.out.println("avg. Outputs/transaction =" + acOutputs*1.0/acTransactions);
+        if (!countersOnly) {
+            System.out.println("Inputs/transaction: " + inputsPerTransaction);
+            System.out.println("Outputs/transaction: " + outputsPerTransaction);
+        }
+
+        System.out.println("acTransactions =" + acTransactions);
+        System.out.println("Multisigs:");
+
+        System.out.println("ksi.count="+ksi.count);
+        System.out.println("ksi.acNumSigs="+ksi.acNumSigs);
+        System.out.println("ksi.acNumKeys="+ksi.acNumKeys);
+        System.out.println("ksi.count2of2="+ksi.count2of2);
+        System.out.println("ksi.count2of3="+ksi.count2of3);
+        System.out.println("ksi.acSigSize="+ksi.acSigSize);
+/*
+        System.out.println("kso.count="+kso.count);
+        System.out.println("kso.acNumSigs="+kso.acNumSigs);
+        System.out.println("kso.acNumKeys="+kso.acNumKeys);
+        System.out.println("kso.count2of2="+kso.count2of2);
+        System.out.println("kso.count2of3="+kso.count2of3);
+*/
+
+        System.out.println("Inputs:");
+        System.out.println("acInputP2SHSize="+acInputP2SHSize);
+        System.out.println("acInputP2PKH="+acInputP2PKH);
+        System.out.println("acInputP2SH="+acInputP2SH);
+        System.out.println("acInputP2SH_MULTISIG="+acInputP2SH_MULTISIG);
+        System.out.println("acInputP2SH_PK="+acInputP2SH_PK);
+        System.out.println("acInputP2PK="+acInputP2PK);
+        System.out.println("acInputMULTISIG="+acInputMULTISIG);
+        System.out.println("Outputs:");
+        System.out.println("acOpReturn=" + acOpReturn);
+        System.out.println("acSentToCLTVPaymentChannel=" + acSentToCLTVPaymentChannel);
+        System.out.println("acPayToScriptHash=" + acPayToScriptHash);
+        System.out.println("acSentToMultiSig=" + acSentToMultiSig);
+        System.out.println("acSentToAddress=" + acSentToAddress);
+        System.out.println("acSentToRawPubKey=" + acSentToRawPubKey);
+        System.out.println("acUnknown=" + acUnknown);
+        System.out.println("acInvalid=" + acInvalid);
+        System.out.println("acOverlapedTypes="+acOverlapedTypes);
+        long outputSum = acOpReturn + acSentToCLTVPaymentChannel + acPayToScriptHash
+                + acPayToScriptHash + acSentToMultiSig + acSentToAddress
+                + acSentToRawPubKey + acUnknown;
+
+        System.out.println("outputSum=" + acOutputs);
+        System.out.println("Averages------------------------:");
+        System.out.println("Multisigs:");
+        System.out.println("ksi Avg.NumSigs="+ksi.acNumSigs*1.0/ksi.count);
+        System.out.println("ksi Avg.NumKeys="+ksi.acNumKeys*1.0/ksi.count);
+        System.out.println("ksi count2of2="+getPercent(ksi.count2of2,ksi.count)+"%");
+        System.out.println("ksi count2of3="+getPercent(ksi.count2of3,ksi.count)+"%");
+        System.out.println("ksi.Avg SigSize="+ksi.acSigSize*1.0/ksi.count);
+        if (!countersOnly)
+            printShapes("ksi", ksi);
+/*
+        System.out.println("kso Avg.NumSigs="+kso.acNumSigs*1.0/kso.count);
+        System.out.println("kso Avg.NumKeys="+kso.acNumKeys*1.0/kso.count);
+        System.out.println("kso count2of2="+getPercent(kso.count2of2,kso.count)+"%");
+        System.out.println("kso count2of3="+getPercent(kso.count2of3,kso.count)+"%");
+*/
+        System.out.println("Inputs:");
+        System.out.println("Avg.InputP2SHSize="+acInputP2SHSize*1.0/acInputP2SH);
+        if (!countersOnly) {
+            System.out.println("RedeemScriptSize: " + redeemScriptSize);
+            for (int k = 0; k < scriptSigSize.length; k++)
+                System.out.println("ScriptSigSize " + InputClassifier.TYPE_NAMES[k] + ": " + scriptSigSize[k]);
+        }
+        System.out.println("acInputP2PKH="+getPercent(acInputP2PKH,acInputs)+"%");
+        System.out.println("acInputP2SH="+getPercent(acInputP2SH,acInputs)+"%");
+        System.out.println("acInputP2SH_MULTISIG="+getPercent(acInputP2SH_MULTISIG,acInputs)+"%");
+        System.out.println("acInputP2SH_PK="+getPercent(acInputP2SH_PK,acInputs)+"%");
+        System.out.println("acInputP2PK="+getPercent(acInputP2PK,acInputs)+"%");
+        System.out.println("acInputMULTISIG="+getPercent(acInputMULTISIG,acInputs)+"%");
+        if (!countersOnly) {
+            System.out.println("Most frequent scriptSig templates (estimated):");
+            scriptSigTemplates.print("scriptSig", TOP_TEMPLATES);
+            System.out.println("Most frequent other P2SH redeem script templates (estimated):");
+            otherRedeemScriptTemplates.print("redeemScript", TOP_TEMPLATES);
+        }
+
+        System.out.println("Outputs:");
+
+        System.out.println("avOpReturn=" + getPercent(acOpReturn,acOutputs)+"%");
+        System.out.println("avSentToCLTVPaymentChannel=" + getPercent(acSentToCLTVPaymentChannel,acOutputs)+"%");
+        System.out.println("avPayToScriptHash=" + getPercent(acPayToScriptHash,acOutputs)+"%");
+        System.out.println("avSentToMultiSig=" + getPercent(acSentToMultiSig,acOutputs)+"%");
+        System.out.println("avSentToAddress=" + getPercent(acSentToAddress,acOutputs)+"%");
+        System.out.println("avSentToRawPubKey=" + getPercent(acSentToRawPubKey,acOutputs)+"%");
+        System.out.println("avUnknown=" + getPercent(acUnknown,acOutputs)+"%");
+        System.out.println("acInvalid=" + getPercent(acInvalid,acOutputs)+"%");
+        System.out.println("avOverlapedTypes="+getPercent(acOverlapedTypes,acOutputs)+"%");
+        if (!countersOnly) {
+            System.out.println(String.format(Locale.US, "Distinct (estimated, +-%.1f%%):", HyperLogLog.STANDARD_ERROR * 100));
+            System.out.println("ksi keys=" + ksi.distinctKeys.estimate());
+            System.out.println("kso keys=" + kso.distinctKeys.estimate());
+            System.out.println("redeem scripts=" + distinctRedeemScripts.estimate());
+            System.out.println("P2PKH destinations=" + distinctAddresses.estimate());
+            System.out.println("P2SH destinations=" + distinctScriptHashes.estimate());
+        }
+        printSpaceModels();
+
+    }
+
+    // One line per space model: bytes in the main chain and in the witness, virtual size
+    // (main chain + witness / 4) and its ratio to the legacy size.
+    // Stored results do not have them, see countersOnly.
+    private void printSpaceModels() {
+        int legacy = Arrays.asList(SpaceModel.MODELS).indexOf(SpaceModel.LEGACY);
+        if ((modelMainChain[legacy] == 0) || countersOnly)
+            return;
+        System.out.println("Space models:");
+        for (int m = 0; m < SpaceModel.MODELS.length; m++) {
+            double vsize = modelMainChain[m] + modelWitness[m] / 4;
+            System.out.println(String.format(Locale.US, "%s: mainChain=%.0f witness=%.0f vsize=%.0f vsize/legacy=%.4f",
+                    SpaceModel.MODELS[m].getName(), modelMainChain[m], modelWitness[m], vsize, vsize / modelMainChain[legacy]));
+        }
+    }
+
+    // One line per m-of-n shape seen, with its share of all the multisig scripts
+    private static void printShapes(String name, KeyStats ks) {
+        for (int m = 1; m <= KeyStats.MAX_KEYS; m++) {
+            for (int n = 1; n <= KeyStats.MAX_KEYS; n++) {
+                long c = ks.getShape(m, n);
+                if (c > 0)
+                    System.out.println(name + " " + m + "of" + n + "=" + c + " (" + getPercent(c, ks.count) + "%)");
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-block analysis results, kept in a file so that a new run only analyzes the blocks it has not seen.
+ * The file starts with a header (magic, version, number of counters, BlockStats.CLASSIFIER_VERSION)
+ * followed by one row per block:
+ * block hash (32 bytes), height (int, -1 if unknown) and the counters of BlockStats.toArray(),
+ * each as an unsigned LEB128 varint.
+ * Rows are appended as blocks are analyzed. A row cut short by an interrupted run is dropped when
+ * the store is opened. If the header does not match the current BlockStats fields or classification,
+ * the old rows are discarded and every block is analyzed again.
+ */
+public class BlockStatsStore implements Closeable {
+    static final int MAGIC = 0x42535453; // "BSTS"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 16;
+
+    public static class Row {
+        public final Sha256Hash hash;
+        public final int height;
+        public final long[] counters;
+
+        Row(Sha256Hash hash, int height, long[] counters) {
+            this.hash = hash;
+            this.height = height;
+            this.counters = counters;
+        }
+    }
+
+    private final File file;
+    // In the order they were stored
+    private final Map<Sha256Hash, Row> rows = new LinkedHashMap<>();
+    private final DataOutputStream out;
+    private int added = 0;
+
+    public BlockStatsStore(File file) throws IOException {
+        this.file = file;
+        long validLength = file.exists() ? load() : 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(validLength);
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (validLength == 0) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(BlockStats.FIELD_COUNT);
+            out.writeInt(BlockStats.CLASSIFIER_VERSION);
+        }
+    }
+
+    // Reads the rows and returns the length of the valid part of the file
+    private long load() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if ((buf.remaining() < HEADER_SIZE) || (buf.getInt() != MAGIC) || (buf.getInt() != VERSION)
+                || (buf.getInt() != BlockStats.FIELD_COUNT) || (buf.getInt() != BlockStats.CLASSIFIER_VERSION)) {
+            System.out.println("Discarding results in " + file + ": written by another version");
+            return 0;
+        }
+        long valid = buf.position();
+        byte[] hash = new byte[32];
+        try {
+            while (buf.hasRemaining()) {
+                buf.get(hash);
+                int height = buf.getInt();
+                long[] counters = new long[BlockStats.FIELD_COUNT];
+                for (int i = 0; i < counters.length; i++)
+                    counters[i] = readVarLong(buf);
+                Sha256Hash h = Sha256Hash.wrap(hash.clone());
+                rows.put(h, new Row(h, height, counters));
+                valid = buf.position();
+            }
+        } catch (BufferUnderflowException e) {
+            System.out.println("Dropping incomplete last row of " + file);
+        }
+        return valid;
+    }
+
+    public synchronized BlockStats get(Sha256Hash hash) {
+        Row row = rows.get(hash);
+        return (row == null) ? null : BlockStats.fromArray(row.counters);
+    }
+
+    public synchronized void put(Sha256Hash hash, int height, BlockStats stats) throws IOException {
+        if (rows.containsKey(hash))
+            return;
+        long[] counters = stats.toArray();
+        out.write(hash.getBytes());
+        out.writeInt(height);
+        for (long c : counters)
+            writeVarLong(out, c);
+        rows.put(hash, new Row(hash, height, counters));
+        added++;
+    }
+
+    // Rows in the order they were stored
+    public synchronized Collection<Row> getRows() {
+        return rows.values();
+    }
+
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    // Number of rows added since the store was opened
+    public synchronized int getAdded() {
+        return added;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7fL) != 0) {
+            out.writeByte((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(ByteBuffer buf) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.bitcoinj.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes one row per input and per output analyzed, as columns of fixed-width little-endian
+ * values, one file per column (e.g. inputs.type.u8, outputs.scriptSize.i32), so other tools can
+ * memory-map a column and index it by row number. Row r of every column of a table belongs to
+ * the same input or output; the number of rows is the file size divided by the width.
+ * schema.txt lists the tables, columns, types and row counts.
+ * mainChain and segwit are the bytes attributed to the row by SpaceModel.ORIGINAL, the estimate
+ * behind acMainChainSpace and acSegwitSpace. Coinbase inputs are not exported.
+ * Rows must come from a single thread, block by block: startBlock(), then the rows of the block.
+ */
+public class ColumnExporter implements Closeable {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    static class Column {
+        final String name;
+        final String type;
+        final int width;
+        final File file;
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Column(File dir, String table, String name, String type, int width) throws IOException {
+            this.name = name;
+            this.type = type;
+            this.width = width;
+            file = new File(dir, table + "." + name + "." + type);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void putInt(int v) {
+            if (buffer.remaining() < 4)
+                flush();
+            buffer.putInt(v);
+        }
+
+        void putByte(int v) {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.put((byte) v);
+        }
+
+        void flush() {
+            buffer.flip();
+            Metrics.BYTES_WRITTEN.add(buffer.remaining());
+            try {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write " + file, e);
+            }
+            buffer.clear();
+        }
+
+        void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    static class Table {
+        final String name;
+        final Column[] columns;
+        long rows = 0;
+
+        Table(String name, Column... columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+    }
+
+    private final File dir;
+    private final Table inputs;
+    private final Table outputs;
+    private int height = -1;
+
+    public ColumnExporter(File dir) throws IOException {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        inputs = new Table("inputs",
+                new Column(dir, "inputs", "height", "i32", 4),
+                new Column(dir, "inputs", "tx", "i32", 4),
+                new Column(dir, "inputs", "index", "i32", 4),
+                new Column(dir, "inputs", "type", "u8", 1),
+                new Column(dir, "inputs", "scriptSize", "i32", 4),
+                new Column(dir, "inputs", "mainChain", "i32", 4),
+                new Column(dir, "inputs", "segwit", "i32", 4));
+        outputs = new Table("outputs",
+                new Column(dir, "outputs", "height", "i32", 4),
+                new Column(dir, "outputs", "tx", "i32", 4),
+                new Column(dir, "outputs", "index", "i32", 4),
+                new Column(dir, "outputs", "type", "u8", 1),
+                new Column(dir, "outputs", "scriptSize", "i32", 4),
+                new Column(dir, "outputs", "mainChain", "i32", 4));
+    }
+
+    // Height of the rows that follow; block positions are used when heights are unknown
+    public void startBlock(int height) {
+        this.height = height;
+    }
+
+    // Input j of transaction i of the block, with its InputClassifier type flags
+    public void addInput(int i, int j, int type, int scriptSize) {
+        Column[] c = inputs.columns;
+        c[0].putInt(height);
+        c[1].putInt(i);
+        c[2].putInt(j);
+        c[3].putByte(type);
+        c[4].putInt(scriptSize);
+        c[5].putInt((int) SpaceModel.ORIGINAL.inputMainChain(type, scriptSize));
+        c[6].putInt((int) SpaceModel.ORIGINAL.inputWitness(type, scriptSize));
+        inputs.rows++;
+    }
+
+    // Output j of transaction i of the block, with its OutputClassifier type flags
+    public void addOutput(int i, int j, int type, int scriptSize) {
+        Column[] c = outputs.columns;
+        c[0].putInt(height);
+        c[1].putInt(i);
+        c[2].putInt(j);
+        c[3].putByte(type);
+        c[4].putInt(scriptSize);
+        c[5].putInt((int) SpaceModel.ORIGINAL.outputMainChain(type, scriptSize));
+        outputs.rows++;
+    }
+
+    public long getInputRows() {
+        return inputs.rows;
+    }
+
+    public long getOutputRows() {
+        return outputs.rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (PrintWriter schema = new PrintWriter(new File(dir, "schema.txt"), "UTF-8")) {
+            schema.println("table\tcolumn\ttype\tfile\trows");
+            for (Table t : new Table[] {inputs, outputs}) {
+                for (Column c : t.columns) {
+                    c.close();
+                    schema.println(t.name + "\t" + c.name + "\t" + c.type + "\t" + c.file.getName() + "\t" + t.rows);
+                }
+            }
+        }
+    }
+}
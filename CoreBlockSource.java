@@ -0,0 +1,218 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Blocks read directly from the blk*.dat files of a Bitcoin Core blocks/ directory.
+ * Core stores blocks in the order they were received, not by height, and keeps stale
+ * blocks too. BlockFileLoader only iterates the files in that order, so the files are
+ * indexed here instead: the block headers are read once to build the best chain (most
+ * accumulated work), and each block is then read from its file offset when requested.
+ * Only the blocks in the requested height range are exposed, in height order.
+ */
+public class CoreBlockSource implements BlockSource {
+    static final int UNKNOWN = -1;
+    static final int UNREACHABLE = -2;
+    static final BigInteger LARGEST_HASH = BigInteger.ONE.shiftLeft(256);
+
+    // Location of a block record in the blk files
+    static class Entry {
+        final int file;
+        final int offset; // of the serialized block, after magic and size
+        final int size;
+        final Sha256Hash hash;
+        final Sha256Hash prev;
+        final long bits;
+        int height = UNKNOWN;
+        BigInteger chainWork;
+
+        Entry(int file, int offset, int size, Sha256Hash hash, Sha256Hash prev, long bits) {
+            this.file = file;
+            this.offset = offset;
+            this.size = size;
+            this.hash = hash;
+            this.prev = prev;
+            this.bits = bits;
+        }
+    }
+
+    private final NetworkParameters params;
+    private final List<File> files;
+    private final MappedByteBuffer[] mappings;
+    private final int fromHeight;
+    private final Entry[] chain;
+
+    // Exposes the best chain blocks with fromHeight <= height < toHeight. toHeight < 0 means up to the tip.
+    public CoreBlockSource(NetworkParameters params, File blocksDir, int fromHeight, int toHeight) throws IOException {
+        this.params = params;
+        this.files = listBlockFiles(blocksDir);
+        if (files.isEmpty())
+            throw new IOException("No blk*.dat files in " + blocksDir);
+        checkNotObfuscated(blocksDir);
+        this.mappings = new MappedByteBuffer[files.size()];
+
+        Map<Sha256Hash, Entry> index = new HashMap<>();
+        for (int f = 0; f < files.size(); f++)
+            indexFile(f, index);
+        Entry tip = resolveChain(index, params.getGenesisBlock().getHash());
+        if (tip == null)
+            throw new IOException("Genesis block not found in " + blocksDir);
+
+        int top = ((toHeight < 0) || (toHeight > tip.height + 1)) ? tip.height + 1 : toHeight;
+        this.fromHeight = Math.max(0, Math.min(fromHeight, top));
+        this.chain = new Entry[top - this.fromHeight];
+        for (Entry e = tip; (e != null) && (e.height >= this.fromHeight); e = index.get(e.prev)) {
+            if (e.height < top)
+                chain[e.height - this.fromHeight] = e;
+        }
+    }
+
+    // blk00000.dat, blk00001.dat, ... up to the first missing file
+    static List<File> listBlockFiles(File blocksDir) {
+        List<File> list = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            File file = new File(blocksDir, String.format(Locale.US, "blk%05d.dat", i));
+            if (!file.exists())
+                break;
+            list.add(file);
+        }
+        return list;
+    }
+
+    // Since Core 28 block files may be XOR-obfuscated with the key in xor.dat
+    static void checkNotObfuscated(File blocksDir) throws IOException {
+        File xor = new File(blocksDir, "xor.dat");
+        if (!xor.exists())
+            return;
+        ByteBuffer key = MappedBlockReader.map(xor);
+        while (key.hasRemaining()) {
+            if (key.get() != 0)
+                throw new IOException("Obfuscated block files are not supported, restart bitcoind with -blocksxor=0 and reindex");
+        }
+    }
+
+    private void indexFile(int f, Map<Sha256Hash, Entry> index) throws IOException {
+        ByteBuffer buf = mapping(f).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int magic = Integer.reverseBytes((int) params.getPacketMagic());
+        byte[] header = new byte[Block.HEADER_SIZE];
+        int pos = 0;
+        // Each record is: magic, size (LE), serialized block. Core pre-allocates files with zeros.
+        while (buf.limit() - pos >= 8) {
+            if (buf.getInt(pos) != magic)
+                break;
+            int size = buf.getInt(pos + 4);
+            int offset = pos + 8;
+            if ((size < Block.HEADER_SIZE) || (size > buf.limit() - offset))
+                break; // truncated record at the end of the last file
+            buf.position(offset);
+            buf.get(header);
+            Sha256Hash hash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(header));
+            Sha256Hash prev = Sha256Hash.wrapReversed(Arrays.copyOfRange(header, 4, 36));
+            long bits = Utils.readUint32(header, 72);
+            if (!index.containsKey(hash))
+                index.put(hash, new Entry(f, offset, size, hash, prev, bits));
+            pos = offset + size;
+        }
+    }
+
+    // Computes height and accumulated work of every block connected to the genesis block
+    // and returns the tip with the most work
+    static Entry resolveChain(Map<Sha256Hash, Entry> index, Sha256Hash genesis) {
+        Entry best = null;
+        ArrayDeque<Entry> path = new ArrayDeque<>();
+        for (Entry e : index.values()) {
+            // Walk back to the first block whose height is already known
+            Entry p = e;
+            while ((p != null) && (p.height == UNKNOWN)) {
+                path.push(p);
+                p = p.hash.equals(genesis) ? null : index.get(p.prev);
+            }
+            Entry parent = p;
+            while (!path.isEmpty()) {
+                Entry q = path.pop();
+                if (q.hash.equals(genesis)) {
+                    q.height = 0;
+                    q.chainWork = getWork(q.bits);
+                } else if ((parent == null) || (parent.height < 0)) {
+                    q.height = UNREACHABLE;
+                } else {
+                    q.height = parent.height + 1;
+                    q.chainWork = parent.chainWork.add(getWork(q.bits));
+                }
+                if ((q.height >= 0) && ((best == null) || (q.chainWork.compareTo(best.chainWork) > 0)))
+                    best = q;
+                parent = q;
+            }
+        }
+        return best;
+    }
+
+    static BigInteger getWork(long bits) {
+        BigInteger target = Utils.decodeCompactBits(bits);
+        return LARGEST_HASH.divide(target.add(BigInteger.ONE));
+    }
+
+    private synchronized MappedByteBuffer mapping(int f) throws IOException {
+        if (mappings[f] == null)
+            mappings[f] = MappedBlockReader.map(files.get(f));
+        return mappings[f];
+    }
+
+    @Override
+    public int size() {
+        return chain.length;
+    }
+
+    @Override
+    public Block getBlock(int index) throws IOException {
+        Entry e = chain[index];
+        try {
+            // Core stores segwit blocks with their witnesses
+            return StreamingBlockReader.makeBlock(params, getBlockBytes(index));
+        } catch (ProtocolException ex) {
+            throw new IOException("Cannot parse block " + e.hash + " at height " + e.height + " in " + files.get(e.file), ex);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBlockBytes(int index) throws IOException {
+        Entry e = chain[index];
+        ByteBuffer buf = mapping(e.file).duplicate();
+        buf.position(e.offset);
+        buf.limit(e.offset + e.size);
+        return buf;
+    }
+
+    @Override
+    public Sha256Hash getHash(int index) {
+        return chain[index].hash;
+    }
+
+    @Override
+    public int getHeight(int index) {
+        return fromHeight + index;
+    }
+
+    @Override
+    public String getName(int index) {
+        return "height " + getHeight(index);
+    }
+}
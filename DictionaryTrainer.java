@@ -0,0 +1,104 @@
+package org.bitcoinj.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a preset dictionary for Deflater from sample blocks: the byte segments that cover the
+ * most frequent 8-byte sequences of the samples (script templates, DER prefixes, common keys).
+ * Every sequence is counted in a fixed table; segments are then taken greedily by the count of
+ * the sequences they cover, and the sequences of a segment taken no longer count for the next
+ * ones, so the dictionary does not repeat itself. The best segments go to the end of the
+ * dictionary, where Deflater reaches them with the shortest distances.
+ */
+public class DictionaryTrainer {
+    // Deflater only looks 32KB back, a larger dictionary would not be used
+    public static final int MAX_SIZE = 32 * 1024;
+    // Blocks sampled to train and total bytes read from them
+    public static final int SAMPLE_BLOCKS = 64;
+    public static final int SAMPLE_BYTES = 16 * 1024 * 1024;
+
+    static final int WINDOW = 8;
+    static final int SEGMENT = 64;
+    static final int STEP = 16;
+    static final int TABLE_BITS = 20;
+
+    private final List<byte[]> samples = new ArrayList<>();
+    private final int[] counts = new int[1 << TABLE_BITS];
+    private long sampleBytes = 0;
+
+    static int slot(byte[] b, int p) {
+        long v = 0;
+        for (int i = 0; i < WINDOW; i++)
+            v = (v << 8) | (b[p + i] & 0xff);
+        return (int) ((v * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_BITS));
+    }
+
+    public void add(byte[] sample) {
+        samples.add(sample);
+        sampleBytes += sample.length;
+        for (int p = 0; p + WINDOW <= sample.length; p++)
+            counts[slot(sample, p)]++;
+    }
+
+    public long getSampleBytes() {
+        return sampleBytes;
+    }
+
+    private long score(byte[] b, int p) {
+        long score = 0;
+        int end = Math.min(p + SEGMENT, b.length) - WINDOW;
+        for (int q = p; q <= end; q++)
+            score += counts[slot(b, q)];
+        return score;
+    }
+
+    public byte[] train(int size) {
+        size = Math.min(size, MAX_SIZE);
+        // Candidates are the segments starting every STEP bytes; a queue entry is score << 24 | candidate
+        int numCandidates = 0;
+        for (byte[] b : samples)
+            numCandidates += (b.length >= SEGMENT) ? (b.length - SEGMENT) / STEP + 1 : 0;
+        numCandidates = Math.min(numCandidates, 1 << 24);
+        int[] sampleOf = new int[numCandidates];
+        int[] positionOf = new int[numCandidates];
+        PriorityQueue<Long> queue = new PriorityQueue<>(Math.max(1, numCandidates), Collections.<Long>reverseOrder());
+        int c = 0;
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] b = samples.get(s);
+            for (int p = 0; (p + SEGMENT <= b.length) && (c < numCandidates); p += STEP) {
+                sampleOf[c] = s;
+                positionOf[c] = p;
+                queue.add((score(b, p) << 24) | c);
+                c++;
+            }
+        }
+        byte[] dictionary = new byte[size];
+        int start = size;
+        while ((start > 0) && !queue.isEmpty()) {
+            long top = queue.poll();
+            c = (int) (top & ((1 << 24) - 1));
+            byte[] b = samples.get(sampleOf[c]);
+            int p = positionOf[c];
+            // Scores only go down as segments are taken; take this one if it is still the best
+            long score = score(b, p);
+            // Not worth it if its sequences were seen about once
+            if (score <= SEGMENT - WINDOW + 1)
+                continue;
+            if (!queue.isEmpty() && (score < (queue.peek() >>> 24))) {
+                queue.add((score << 24) | c);
+                continue;
+            }
+            int n = Math.min(SEGMENT, start);
+            start -= n;
+            System.arraycopy(b, p, dictionary, start, n);
+            for (int q = p; q + WINDOW <= p + SEGMENT; q++)
+                counts[slot(b, q)] = 0;
+        }
+        byte[] result = new byte[size - start];
+        System.arraycopy(dictionary, start, result, 0, result.length);
+        return result;
+    }
+}
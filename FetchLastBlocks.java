@@ -4,10 +4,17 @@ package org.bitcoinj.examples;
 import org.bitcoinj.core.*;
 import org.bitcoinj.kits.WalletAppKit;
 import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.RegTestParams;
 import org.bitcoinj.params.TestNet3Params;
 import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.store.H2FullPrunedBlockStore;
 import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.tools.AnalysisPipeline;
+import org.bitcoinj.tools.BlockArchive;
+import org.bitcoinj.tools.BlockStats;
+import org.bitcoinj.tools.Metrics;
+import org.bitcoinj.tools.UnrecognizedInputs;
 import org.bitcoinj.utils.BriefLogFormatter;
 
 import java.io.File;
@@ -16,7 +23,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Sergio on 12/04/2017.
@@ -24,6 +32,9 @@ import java.util.concurrent.Future;
 public class FetchLastBlocks {
 
 
+    // Interval of the progress line printed while fetching
+    static final long REPORT_MILLIS = 10000;
+
     static   Sha256Hash initialHash = Sha256Hash.wrap("0000000000000000020629cb90d370dd08743e3c0ecb7f9836e6594b3e5e2e03");
 
 
@@ -32,6 +43,7 @@ public class FetchLastBlocks {
         File file;
 
         try {
+            long start = System.nanoTime();
             file = new File(fileName);
             if (file.exists())
                 return;
@@ -44,6 +56,7 @@ public class FetchLastBlocks {
             }
             params.getDefaultSerializer().serialize(block,fop);
             fop.close();
+            Metrics.blockExported(fileName, file.length(), System.nanoTime() - start);
 
         } catch (FileNotFoundException e) {
             e.printStackTrace();
@@ -51,8 +64,65 @@ public class FetchLastBlocks {
             e.printStackTrace();
         }
     }
+    // Hashes and heights of the count blocks ending at hash, as far as the block store has them.
+    // An SPV store only keeps the most recent headers, so fewer blocks may be returned.
+    static int resolveHashes(BlockStore bs, Sha256Hash hash, int count, List<Sha256Hash> hashes, List<Integer> heights) throws BlockStoreException {
+        StoredBlock stored = bs.get(hash);
+        while ((stored != null) && (hashes.size() < count)) {
+            hashes.add(stored.getHeader().getHash());
+            heights.add(stored.getHeight());
+            stored = stored.getPrev(bs);
+        }
+        return hashes.size();
+    }
+
+    // Usage: FetchLastBlocks [--archive=<base>] [--blocks=n] [--window=n] [--stall=millis] [--head] [--regtest]
+    //                        [--analyze[=workers] [--save]]
+    // Without --archive each block is written to its own 0.bin..999.bin file. An archive packed with
+    // BlockAnalysis --compress stays compressed.
+    // --analyze runs BlockAnalysis on the blocks as they arrive; they are then only written with --save.
+    // Inputs it cannot classify are listed in unrecognized.txt.
+    // --head starts from the chain head instead of initialHash. --regtest fetches from a local regtest node.
+    // Blocks are downloaded in parallel, --window at a time. The hashes of the blocks older than the SPV
+    // block store, which only has the most recent headers, are found by asking a peer for their headers
+    // (see HeaderResolver); this includes every block of a default run, as initialHash is older than the store.
     public static void main(String[] args) throws Exception {
-        WalletAppKit kit = new WalletAppKit(MainNetParams.get(), new java.io.File("."), "test");
+        String archive = null;
+        int numBlocks = 1000;
+        int window = 16;
+        long stallMillis = 30000;
+        boolean fromHead = false;
+        int analyzeWorkers = 0;
+        boolean saveWhenAnalyzing = false;
+        NetworkParameters params = MainNetParams.get();
+        for (String arg : args) {
+            if (arg.startsWith("--archive="))
+                archive = arg.substring("--archive=".length());
+            else if (arg.startsWith("--blocks="))
+                numBlocks = Integer.parseInt(arg.substring("--blocks=".length()));
+            else if (arg.startsWith("--window="))
+                window = Integer.parseInt(arg.substring("--window=".length()));
+            else if (arg.startsWith("--stall="))
+                stallMillis = Long.parseLong(arg.substring("--stall=".length()));
+            else if (arg.equals("--analyze"))
+                analyzeWorkers = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("--analyze="))
+                analyzeWorkers = Integer.parseInt(arg.substring("--analyze=".length()));
+            else if (arg.equals("--save"))
+                saveWhenAnalyzing = true;
+            else if (arg.equals("--head"))
+                fromHead = true;
+            else if (arg.equals("--regtest")) {
+                params = RegTestParams.get();
+                fromHead = true;
+            }
+        }
+
+        boolean save = (analyzeWorkers == 0) || saveWhenAnalyzing;
+
+        WalletAppKit kit = new WalletAppKit(params, new java.io.File("."), "test");
+        if (params == RegTestParams.get())
+            kit.connectToLocalHost();
         //Block b =kit.chain().getBlockStore().get(initialHash).getHeader();
         //System.out.println(b);
 
@@ -60,34 +130,72 @@ public class FetchLastBlocks {
         kit.awaitRunning();
         BlockChain chain = kit.chain();
         BlockStore bs = chain.getBlockStore();
-        Peer peer = kit.peerGroup().getDownloadPeer();
         PeerGroup peerGroup =kit.peerGroup();
         //Block b = peer.getBlock(bs.getChainHead().getHeader().getHash()).get();
         //System.out.println(b);
 
         BriefLogFormatter.init();
         System.out.println("Connecting to node");
-        final NetworkParameters params = MainNetParams.get();
-
-
 
-        //
+        final NetworkParameters fParams = params;
+        final BlockArchive.Writer writer = (save && (archive != null)) ? new BlockArchive.Writer(new File(archive)) : null;
+        final boolean fSave = save;
+        final AnalysisPipeline pipeline = (analyzeWorkers > 0) ? new AnalysisPipeline(Context.get(), analyzeWorkers, 4 * analyzeWorkers, 100) : null;
+        if (pipeline != null)
+            pipeline.start();
+
+        Sha256Hash startHash = fromHead ? bs.getChainHead().getHeader().getHash() : initialHash;
+        final List<Sha256Hash> hashes = new ArrayList<>();
+        final List<Integer> heights = new ArrayList<>();
+        resolveHashes(bs, startHash, numBlocks, hashes, heights);
+        System.out.println("Block hashes found in the block store: " + hashes.size());
+        // The rest are older than the store, unless it reached the genesis block
+        if ((hashes.size() < numBlocks) && (heights.isEmpty() || (heights.get(heights.size() - 1) > 0))) {
+            Sha256Hash end = hashes.isEmpty() ? startHash : bs.get(hashes.get(hashes.size() - 1)).getHeader().getPrevBlockHash();
+            Peer peer = peerGroup.getDownloadPeer();
+            if (peer == null)
+                peer = peerGroup.waitForPeers(1).get().get(0);
+            int found = new HeaderResolver(params, peer, stallMillis).resolve(end, numBlocks - hashes.size(), hashes, heights);
+            System.out.println("Older block hashes found from the headers of " + peer + ": " + found);
+        }
 
-        Sha256Hash blockHash = initialHash;
-        for(int i=0;i<1000;i++) {
-            String fn =""+i+".bin";
-            File f = new File(fn);
-            if(f.exists()) {
-                System.out.println("Block exists: "+i);
+        // Skip the blocks already saved
+        List<Sha256Hash> missing = new ArrayList<>();
+        final List<Integer> missingIndex = new ArrayList<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            boolean exists = (writer != null) ? writer.contains(hashes.get(i)) : new File(i + ".bin").exists();
+            if (exists && (pipeline == null))
                 continue;
-            }
-            Future<Block> future = peer.getBlock(blockHash);
-            System.out.println("Waiting for node to send us the requested block "+i+": " + blockHash);
-            Block block = future.get();
-            //System.out.println(block);
-            exportBlock(params,block,fn);
-            blockHash = block.getPrevBlockHash();
+            missing.add(hashes.get(i));
+            missingIndex.add(i);
         }
+        System.out.println("Blocks already saved: " + (hashes.size() - missing.size()));
+
+        Metrics.Reporter reporter = Metrics.startReporter(REPORT_MILLIS);
+        UnrecognizedInputs unrecognized = (pipeline != null) ? UnrecognizedInputs.start(new File("unrecognized.txt")) : null;
+
+        ParallelBlockDownloader downloader = new ParallelBlockDownloader(peerGroup, window, stallMillis, 5);
+        downloader.download(missing, new ParallelBlockDownloader.Listener() {
+            @Override
+            public void onBlock(int index, Block block) throws Exception {
+                int i = missingIndex.get(index);
+                if (pipeline != null)
+                    pipeline.submit(block);
+                if (writer != null)
+                    writer.append(heights.get(i), block);
+                else if (fSave)
+                    exportBlock(fParams, block, ""+i+".bin");
+            }
+        });
+
+        if (writer != null)
+            writer.close();
+        BlockStats stats = (pipeline != null) ? pipeline.finish() : null;
+        reporter.close();
+        if (unrecognized != null)
+            unrecognized.close();
+        if (stats != null)
+            stats.print();
 
         System.out.println("Stopping..");
 
@@ -0,0 +1,153 @@
+package org.bitcoinj.examples;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.CheckpointManager;
+import org.bitcoinj.core.GetHeadersMessage;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.listeners.PreMessageReceivedEventListener;
+import org.bitcoinj.utils.Threading;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the hashes and heights of the blocks that end at a given block when the block store does
+ * not have their headers, so they can be downloaded in parallel like the blocks of the store.
+ * The headers are asked to one peer with getheaders, 2000 at a time, from the last checkpoint
+ * before the blocks up to the given block. Without a checkpoints file for the network (regtest)
+ * they are asked from the genesis block.
+ * Headers are only checked to connect to each other: the blocks are not validated either.
+ */
+public class HeaderResolver {
+    // Block times are not in order, a checkpoint this much older than a block is before it
+    static final long TIME_MARGIN_SECONDS = 24 * 60 * 60;
+
+    private final NetworkParameters params;
+    private final Peer peer;
+    private final CheckpointManager checkpoints;
+    private final long timeoutMillis;
+    private final LinkedBlockingQueue<HeadersMessage> received = new LinkedBlockingQueue<>();
+    private volatile boolean waiting = false;
+
+    // Takes the headers messages the peer receives while a request is outstanding, before Peer
+    // handles them as part of a chain download
+    private final PreMessageReceivedEventListener listener = new PreMessageReceivedEventListener() {
+        @Override
+        public Message onPreMessageReceived(Peer peer, Message m) {
+            if (waiting && (m instanceof HeadersMessage)) {
+                received.add((HeadersMessage) m);
+                return null;
+            }
+            return m;
+        }
+    };
+
+    public HeaderResolver(NetworkParameters params, Peer peer, long timeoutMillis) throws IOException {
+        this(params, peer, loadCheckpoints(params), timeoutMillis);
+    }
+
+    // checkpoints may be null, then the headers are asked from the genesis block
+    HeaderResolver(NetworkParameters params, Peer peer, CheckpointManager checkpoints, long timeoutMillis) {
+        this.params = params;
+        this.peer = peer;
+        this.checkpoints = checkpoints;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    static CheckpointManager loadCheckpoints(NetworkParameters params) throws IOException {
+        InputStream in = CheckpointManager.openStream(params);
+        return (in != null) ? new CheckpointManager(params, in) : null;
+    }
+
+    // Adds the hashes and heights of the count blocks ending at end to hashes and heights, the
+    // newest first, or fewer if the chain starts before. Returns the number of blocks added.
+    public int resolve(Sha256Hash end, int count, List<Sha256Hash> hashes, List<Integer> heights) throws Exception {
+        peer.addPreMessageReceivedEventListener(Threading.SAME_THREAD, listener);
+        try {
+            Block block = peer.getBlock(end).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            // Segments of headers, the newest first; each ends at the block before the first of the previous one
+            List<List<Block>> segments = new ArrayList<>();
+            StoredBlock from = checkpointBefore(block.getTimeSeconds());
+            Sha256Hash stop = end;
+            int found = 0;
+            while (true) {
+                List<Block> segment = headersBetween(from.getHeader().getHash(), stop);
+                segments.add(segment);
+                found += segment.size();
+                if ((found >= count) || (from.getHeight() == 0))
+                    break;
+                stop = from.getHeader().getHash();
+                from = checkpointBefore(from.getHeader().getTimeSeconds());
+            }
+            // The block the last segment starts after, the genesis block or a checkpoint
+            segments.add(Collections.singletonList(from.getHeader()));
+
+            int added = 0;
+            int height = from.getHeight() + found;
+            for (List<Block> segment : segments) {
+                for (int i = segment.size() - 1; (i >= 0) && (added < count); i--) {
+                    hashes.add(segment.get(i).getHash());
+                    heights.add(height--);
+                    added++;
+                }
+            }
+            return added;
+        } finally {
+            peer.removePreMessageReceivedEventListener(listener);
+        }
+    }
+
+    private StoredBlock checkpointBefore(long timeSeconds) {
+        long time = timeSeconds - TIME_MARGIN_SECONDS;
+        if ((checkpoints == null) || (time <= params.getGenesisBlock().getTimeSeconds())) {
+            Block genesis = params.getGenesisBlock().cloneAsHeader();
+            return new StoredBlock(genesis, genesis.getWork(), 0);
+        }
+        return checkpoints.getCheckpointBefore(time);
+    }
+
+    // The headers of the blocks after from, up to stop included
+    List<Block> headersBetween(Sha256Hash from, Sha256Hash stop) throws Exception {
+        List<Block> result = new ArrayList<>();
+        Sha256Hash last = from;
+        while (!last.equals(stop)) {
+            List<Block> batch = getHeaders(last, stop);
+            for (Block header : batch) {
+                if (!header.getPrevBlockHash().equals(last))
+                    throw new IOException("Headers from " + peer + " do not connect at " + header.getHash());
+                result.add(header);
+                last = header.getHash();
+                if (last.equals(stop))
+                    break;
+            }
+            // A short batch is the end of the chain of the peer
+            if (!last.equals(stop) && (batch.size() < HeadersMessage.MAX_HEADERS))
+                throw new IOException("Block " + stop + " is not in the chain of " + peer + " after " + from);
+        }
+        return result;
+    }
+
+    private List<Block> getHeaders(Sha256Hash locator, Sha256Hash stop) throws Exception {
+        received.clear();
+        waiting = true;
+        try {
+            peer.sendMessage(new GetHeadersMessage(params, Collections.singletonList(locator), stop));
+            HeadersMessage m = received.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (m == null)
+                throw new IOException("No headers from " + peer + " after " + timeoutMillis + " ms");
+            return m.getBlockHeaders();
+        } finally {
+            waiting = false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.bitcoinj.tools;
+
+import java.util.Locale;
+
+/**
+ * Distribution of non-negative values in a fixed number of buckets, so the memory used does not
+ * depend on the number of values recorded. Values below 16 have a bucket each; above, every power
+ * of two is split in 16 buckets, so a percentile is off by less than 1/16 of its value.
+ * Values of 2^32 and more share the last bucket. The buckets are allocated by the first record().
+ * Histograms of disjoint ranges are combined with merge(), like BlockStats.
+ */
+public class Histogram {
+    static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int MAX_EXPONENT = 31;
+    public static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private long[] counts = null;
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        if (counts == null)
+            counts = new long[BUCKET_COUNT];
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + mantissa;
+    }
+
+    // Smallest value that goes to the bucket
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int mantissa = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + mantissa) << (exponent - SUB_BITS);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return sum * 1.0 / count;
+    }
+
+    // Value below or at which p percent of the values are, rounded up to the end of its bucket
+    public long getPercentile(double p) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKET_COUNT; b++) {
+            seen += counts[b];
+            if (seen >= rank)
+                return (b == BUCKET_COUNT - 1) ? max : Math.min(max, lowestValue(b + 1) - 1);
+        }
+        return max;
+    }
+
+    // Adds the values of o to this histogram and returns this
+    public Histogram merge(Histogram o) {
+        if (o.count == 0)
+            return this;
+        if (counts == null)
+            counts = new long[BUCKET_COUNT];
+        for (int b = 0; b < BUCKET_COUNT; b++)
+            counts[b] += o.counts[b];
+        count += o.count;
+        sum += o.sum;
+        max = Math.max(max, o.max);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0)
+            return "n=0";
+        return String.format(Locale.US, "n=%d avg=%.1f p50=%d p90=%d p99=%d max=%d",
+                count, getMean(), getPercentile(50), getPercentile(90), getPercentile(99), max);
+    }
+}
@@ -0,0 +1,76 @@
+package org.bitcoinj.tools;
+
+/**
+ * Estimated number of distinct byte strings (keys, scripts, hashes) added, in a fixed 4KB
+ * whatever the number of values: 2^P one-byte registers, allocated by the first add().
+ * The standard error of the estimate is 1.04 / sqrt(2^P), about 1.6%.
+ * Sketches of disjoint ranges are combined with merge(), like BlockStats; a value added to both
+ * is counted once. They are not kept by BlockStatsStore, so results from the store have none.
+ */
+public class HyperLogLog {
+    static final int P = 12;
+    static final int REGISTERS = 1 << P;
+    public static final double STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private byte[] registers = null;
+
+    // 64-bit FNV-1a, with the MurmurHash3 finalizer so that every bit depends on every byte
+    static long hash(byte[] data, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++)
+            h = (h ^ (data[i] & 0xff)) * FNV_PRIME;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void add(byte[] data) {
+        add(data, 0, data.length);
+    }
+
+    public void add(byte[] data, int offset, int length) {
+        if (registers == null)
+            registers = new byte[REGISTERS];
+        long h = hash(data, offset, length);
+        int r = (int) (h >>> (64 - P));
+        // Position of the first 1 bit in the rest of the hash
+        int rank = Math.min(Long.numberOfLeadingZeros(h << P), 64 - P) + 1;
+        if (rank > registers[r])
+            registers[r] = (byte) rank;
+    }
+
+    // Adds the values of o to this sketch and returns this
+    public HyperLogLog merge(HyperLogLog o) {
+        if (o.registers == null)
+            return this;
+        if (registers == null)
+            registers = new byte[REGISTERS];
+        for (int r = 0; r < REGISTERS; r++)
+            registers[r] = (byte) Math.max(registers[r], o.registers[r]);
+        return this;
+    }
+
+    public long estimate() {
+        if (registers == null)
+            return 0;
+        double sum = 0;
+        int zeros = 0;
+        for (int r = 0; r < REGISTERS; r++) {
+            sum += 1.0 / (1L << registers[r]);
+            if (registers[r] == 0)
+                zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        // Linear counting is more accurate while many registers are empty
+        if ((estimate <= 2.5 * REGISTERS) && (zeros > 0))
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        return Math.round(estimate);
+    }
+}
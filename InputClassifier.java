@@ -0,0 +1,165 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.TransactionInput;
+
+import static org.bitcoinj.script.ScriptOpCodes.OP_0;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIG;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIGVERIFY;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSIG;
+import static org.bitcoinj.tools.BlockAnalysis.decodeFromOpN;
+import static org.bitcoinj.tools.BlockAnalysis.isPush;
+
+/**
+ * Classifies a scriptSig in a single pass over its chunks.
+ * The result is a set of type flags with the same meaning as the isInput* predicates
+ * of BlockAnalysis. A scriptSig can match more than one type (e.g. P2SH and P2SH_MULTISIG),
+ * so callers count the types found with Integer.bitCount().
+ * The scriptSig is read as ScriptPushes: pushes are slices of the script bytes, their signature
+ * encoding is checked once for the whole transaction, and the redeem script is split at most once.
+ */
+public class InputClassifier {
+    public static final int MULTISIG = 1;
+    public static final int P2PKXX = 1 << 1;
+    public static final int P2PKH = 1 << 2;
+    public static final int P2SH_MULTISIG = 1 << 3;
+    public static final int P2SH = 1 << 4;
+    public static final int P2SH_PK = 1 << 5;
+    public static final int P2PK = 1 << 6;
+
+    // Name of each type, by the bit number of its flag
+    public static final String[] TYPE_NAMES = {
+            "MULTISIG", "P2PKXX", "P2PKH", "P2SH_MULTISIG", "P2SH", "P2SH_PK", "P2PK"
+    };
+
+    // Returns the type flags of the input. Multisig redeem scripts are added to ks,
+    // exactly as isInputP2SH_MULTISIG() does.
+    public static int classify(TransactionInput input, BlockAnalysis.KeyStats ks) {
+        ScriptPushes pushes = new ScriptPushes();
+        pushes.add(input.getScriptBytes());
+        pushes.validate();
+        return classify(pushes, 0, ks);
+    }
+
+    // Type flags of scriptSig k of pushes, which must have been validated
+    public static int classify(ScriptPushes pushes, int k, BlockAnalysis.KeyStats ks) {
+        int n = pushes.getChunkCount(k);
+        // Unparseable scriptSigs have no chunks, no type matches
+        if (n == 0)
+            return 0;
+
+        int first = pushes.getFirst(k);
+        int last = first + n - 1;
+        boolean firstSig = pushes.isSignature(first);
+
+        // [Signature]
+        if (n == 1)
+            return firstSig ? P2PK : 0;
+
+        int flags = 0;
+        boolean lastPush = pushes.isData(last);
+
+        boolean prefixPush = pushes.isData(first);
+        for (int c = first + 1; prefixPush && (c < last); c++)
+            prefixPush = pushes.isData(c);
+
+        // The last push may be a redeem script. Every P2SH form needs it split.
+        byte[] script = pushes.getScript(k);
+        int lastOffset = pushes.getOffset(last);
+        int lastLength = pushes.getLength(last);
+        int redeem = -1;
+        if (lastPush) {
+            redeem = pushes.add(script, lastOffset, lastLength);
+            // If script has errors, it is not a redeem script
+            if (!pushes.isParsed(redeem))
+                redeem = -1;
+        }
+        boolean lastSig = lastPush && pushes.isSignature(last);
+        // A DER signature starts with 0x30, so it is never a canonical public key
+        boolean lastCanonical = lastPush && !lastSig && SignatureValidator.isPubKeyCanonical(script, lastOffset, lastLength);
+
+        // OP_FALSE <sig> ... <sig>  and  OP_FALSE <sig> ... {m [pubkey] ... n OP_CHECKMULTISIG}
+        // The multisig redeem script is counted even if the signatures do not match.
+        boolean redeemMultiSig = (redeem >= 0) && isSentToMultiSig(pushes, redeem, lastLength, ks);
+        if (prefixPush && (pushes.getOpcode(first) == OP_0)) {
+            boolean midSigs = true;
+            for (int c = first + 1; midSigs && (c < last); c++)
+                midSigs = pushes.isSignature(c);
+            if (midSigs && lastSig)
+                flags |= MULTISIG;
+            if (midSigs && redeemMultiSig)
+                flags |= P2SH_MULTISIG;
+        }
+
+        // [push] ... {script}
+        if (prefixPush && (redeem >= 0) && !lastSig && !lastCanonical)
+            flags |= P2SH;
+
+        if ((n == 2) && firstSig && lastPush) {
+            if (lastCanonical) {
+                // [Signature] [PubKey]
+                flags |= P2PKH;
+            } else if ((lastLength >= 16) && (lastLength <= 20)) {
+                // [Signature] [PubKeyHash]
+                flags |= P2PKXX;
+            }
+            // <sig> {[pubkey] OP_CHECKSIG}
+            if ((redeem >= 0) && isSentToRawPubKey(pushes, redeem))
+                flags |= P2SH_PK;
+        }
+        return flags;
+    }
+
+    // BlockAnalysis.isSentToMultiSig() on script r of pushes, of the given size:
+    // m [pubkey] ... n OP_CHECKMULTISIG[VERIFY]
+    static boolean isSentToMultiSig(ScriptPushes pushes, int r, int size, BlockAnalysis.KeyStats ks) {
+        int n = pushes.getChunkCount(r);
+        if (n < 4)
+            return false;
+        int first = pushes.getFirst(r);
+        int last = first + n - 1;
+        int op = pushes.getOpcode(last);
+        if (pushes.isData(last) || ((op != OP_CHECKMULTISIG) && (op != OP_CHECKMULTISIGVERIFY)))
+            return false;
+        int m = pushes.getOpcode(last - 1);
+        if (pushes.isData(last - 1) || !isPush(m))
+            return false;
+        int numKeys = decodeFromOpN(m);
+        if ((numKeys < 1) || (n != 3 + numKeys))
+            return false;
+        for (int c = first + 1; c < last - 1; c++) {
+            if (!pushes.isData(c))
+                return false;
+        }
+        if (!isPush(pushes.getOpcode(first)))
+            return false;
+        int numSigs = decodeFromOpN(pushes.getOpcode(first));
+        if (numSigs < 1)
+            return false;
+        ks.add(numSigs, numKeys, size);
+        byte[] script = pushes.getScript(r);
+        for (int c = first + 1; c < last - 1; c++)
+            ks.distinctKeys.add(script, pushes.getOffset(c), pushes.getLength(c));
+        return true;
+    }
+
+    // Script.isSentToRawPubKey() on script r of pushes: [pubkey] OP_CHECKSIG
+    static boolean isSentToRawPubKey(ScriptPushes pushes, int r) {
+        int first = pushes.getFirst(r);
+        return (pushes.getChunkCount(r) == 2) && pushes.isData(first) && (pushes.getLength(first) > 1)
+                && (pushes.getOpcode(first + 1) == OP_CHECKSIG);
+    }
+
+    // Type flags of an input given the OutputClassifier flags of the output it spends (0 if unknown).
+    // The spent output decides the type; for P2SH the scriptSig still tells what the redeem script is.
+    public static int resolve(int flags, int spentType) {
+        if ((spentType & OutputClassifier.P2SH) != 0)
+            return P2SH | (flags & (P2SH_MULTISIG | P2SH_PK));
+        if ((spentType & OutputClassifier.ADDRESS) != 0)
+            return P2PKH;
+        if ((spentType & OutputClassifier.RAW_PUBKEY) != 0)
+            return P2PK;
+        if ((spentType & OutputClassifier.MULTISIG) != 0)
+            return MULTISIG;
+        return flags;
+    }
+}
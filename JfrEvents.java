@@ -0,0 +1,89 @@
+package org.bitcoinj.tools;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of the tools. Only Metrics refers to this class, and only when
+ * jdk.jfr is available, so the tools still run on JVMs without it.
+ * The time taken is a field rather than the event duration, because it is measured by the
+ * caller: a download, for example, starts long before the block arrives.
+ */
+final class JfrEvents {
+    @Name("org.bitcoinj.tools.BlockDownloaded")
+    @Label("Block Downloaded")
+    @Category("Block Analysis")
+    static class BlockDownloaded extends Event {
+        @Label("Hash")
+        String hash;
+        @Label("Peer")
+        String peer;
+        @Label("Attempts")
+        int attempts;
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("org.bitcoinj.tools.BlockAnalyzed")
+    @Label("Block Analyzed")
+    @Category("Block Analysis")
+    static class BlockAnalyzed extends Event {
+        @Label("Block")
+        String block;
+        @Label("Transactions")
+        int transactions;
+        @Label("Analysis Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long analysisTime;
+    }
+
+    @Name("org.bitcoinj.tools.BlockExported")
+    @Label("Block Exported")
+    @Category("Block Analysis")
+    static class BlockExported extends Event {
+        @Label("File")
+        String file;
+        @Label("Size")
+        @DataAmount
+        long size;
+        @Label("Write Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long writeTime;
+    }
+
+    static void blockDownloaded(String hash, String peer, int attempts, long nanos) {
+        BlockDownloaded e = new BlockDownloaded();
+        if (!e.isEnabled())
+            return;
+        e.hash = hash;
+        e.peer = peer;
+        e.attempts = attempts;
+        e.latency = nanos;
+        e.commit();
+    }
+
+    static void blockAnalyzed(String block, int transactions, long nanos) {
+        BlockAnalyzed e = new BlockAnalyzed();
+        if (!e.isEnabled())
+            return;
+        e.block = block;
+        e.transactions = transactions;
+        e.analysisTime = nanos;
+        e.commit();
+    }
+
+    static void blockExported(String file, long size, long nanos) {
+        BlockExported e = new BlockExported();
+        if (!e.isEnabled())
+            return;
+        e.file = file;
+        e.size = size;
+        e.writeTime = nanos;
+        e.commit();
+    }
+}
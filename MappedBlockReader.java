@@ -0,0 +1,123 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.BitcoinSerializer;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.MessageSerializer;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads block files written by exportBlock (a block message, including its header)
+ * by memory mapping them. The channel is closed as soon as the file is mapped, so no
+ * descriptor is kept per block. One reader is used for a whole directory: the serializer
+ * is shared and the most recently used mappings are kept, so reading the same file again
+ * (e.g. peeking at a header and then reading the block) does not map it twice.
+ * Errors are reported as IOExceptions naming the file.
+ * A reader is not thread-safe; use one per worker.
+ */
+public class MappedBlockReader {
+    static final int DEFAULT_CACHED_MAPPINGS = 16;
+    // magic, command, payload length and checksum
+    static final int MESSAGE_HEADER_SIZE = 4 + 12 + 4 + 4;
+
+    private final NetworkParameters params;
+    private final File directory;
+    private final MessageSerializer serializer;
+    private final Map<String, MappedByteBuffer> mappings;
+
+    public MappedBlockReader(NetworkParameters params, File directory) {
+        this(params, directory, DEFAULT_CACHED_MAPPINGS);
+    }
+
+    public MappedBlockReader(NetworkParameters params, File directory, final int cachedMappings) {
+        this.params = params;
+        this.directory = directory;
+        this.serializer = params.getDefaultSerializer();
+        this.mappings = new LinkedHashMap<String, MappedByteBuffer>(cachedMappings * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MappedByteBuffer> eldest) {
+                return size() > cachedMappings;
+            }
+        };
+    }
+
+    public File getFile(String fileName) {
+        File file = new File(fileName);
+        if ((directory == null) || file.isAbsolute())
+            return file;
+        return new File(directory, fileName);
+    }
+
+    // Returns a buffer positioned at the beginning of the file.
+    // The buffer is a view of a shared mapping, so its position can be freely changed.
+    public ByteBuffer map(String fileName) throws IOException {
+        MappedByteBuffer mapping = mappings.get(fileName);
+        if (mapping == null) {
+            mapping = map(getFile(fileName));
+            mappings.put(fileName, mapping);
+        }
+        return mapping.duplicate();
+    }
+
+    // The block of the file, without the witnesses of its transactions (see StreamingBlockReader)
+    public Block read(String fileName) throws IOException {
+        ByteBuffer buffer = map(fileName);
+        try {
+            BitcoinSerializer.BitcoinPacketHeader header = serializer.deserializeHeader(buffer);
+            if (!header.command.equals("block"))
+                throw new IOException("Block file " + getFile(fileName) + " contains a " + header.command + " message");
+            if (header.size > buffer.remaining())
+                throw new IOException("Truncated block file " + getFile(fileName));
+            byte[] payload = new byte[header.size];
+            buffer.get(payload);
+            byte[] hash = Sha256Hash.hashTwice(payload);
+            for (int i = 0; i < header.checksum.length; i++) {
+                if (hash[i] != header.checksum[i])
+                    throw new IOException("Checksum mismatch in block file " + getFile(fileName));
+            }
+            return StreamingBlockReader.makeBlock(params, ByteBuffer.wrap(payload));
+        } catch (ProtocolException e) {
+            throw new IOException("Cannot parse block file " + getFile(fileName), e);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated block file " + getFile(fileName), e);
+        }
+    }
+
+    // Returns a buffer going from the beginning to the end of the serialized block,
+    // skipping the message header
+    public ByteBuffer mapPayload(String fileName) throws IOException {
+        ByteBuffer buffer = map(fileName);
+        if (buffer.remaining() < MESSAGE_HEADER_SIZE + Block.HEADER_SIZE)
+            throw new IOException("Truncated block file " + getFile(fileName));
+        buffer.position(MESSAGE_HEADER_SIZE);
+        return buffer;
+    }
+
+    // Hashes the block header without deserializing the block
+    public Sha256Hash readHash(String fileName) throws IOException {
+        ByteBuffer buffer = map(fileName);
+        if (buffer.remaining() < MESSAGE_HEADER_SIZE + Block.HEADER_SIZE)
+            throw new IOException("Truncated block file " + getFile(fileName));
+        byte[] header = new byte[Block.HEADER_SIZE];
+        buffer.position(MESSAGE_HEADER_SIZE);
+        buffer.get(header);
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(header));
+    }
+
+    public static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.bitcoinj.tools;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and timers of the fetch and analysis tools. They can be updated from any
+ * thread without locking. A Reporter prints them as one summary line at a fixed interval, with
+ * rates since it was started.
+ * When the JVM supports Flight Recorder, blocks downloaded, analyzed and exported are also
+ * emitted as JFR events (see JfrEvents), so a recording shows them next to GC and I/O activity.
+ */
+public class Metrics {
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos) {
+            record(nanos, 1);
+        }
+
+        // nanos spent on items operations; the max is that of their mean
+        public void record(long nanos, int items) {
+            count.add(items);
+            totalNanos.add(nanos);
+            long mean = nanos / items;
+            long max = maxNanos.get();
+            while ((mean > max) && !maxNanos.compareAndSet(max, mean))
+                max = maxNanos.get();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanNanos() {
+            return getTotalNanos() * 1.0 / getCount();
+        }
+    }
+
+    public static final Counter BLOCKS = new Counter();
+    public static final Counter TRANSACTIONS = new Counter();
+    public static final Counter BYTES_WRITTEN = new Counter();
+    public static final Timer DOWNLOAD = new Timer(); // request to reception of a block
+    public static final Timer DESERIALIZE = new Timer(); // per block, see StreamingBlockReader
+    public static final Timer ANALYZE = new Timer(); // per block
+    public static final Timer CLASSIFY_INPUT = new Timer();
+    public static final Timer CLASSIFY_OUTPUT = new Timer();
+    // Only one transaction in CLASSIFY_SAMPLE has its inputs and outputs timed, so the clock and
+    // the shared timers stay out of the classification loops
+    public static final int CLASSIFY_SAMPLE = 64;
+    public static final Timer EXPORT = new Timer(); // per block written
+
+    static final boolean JFR = isClassAvailable("jdk.jfr.Event");
+
+    static boolean isClassAvailable(String name) {
+        try {
+            Class.forName(name);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static void blockDownloaded(String hash, String peer, int attempts, long nanos) {
+        DOWNLOAD.record(nanos);
+        if (JFR)
+            JfrEvents.blockDownloaded(hash, peer, attempts, nanos);
+    }
+
+    public static void blockAnalyzed(String block, int transactions, long nanos) {
+        BLOCKS.add(1);
+        TRANSACTIONS.add(transactions);
+        ANALYZE.record(nanos);
+        if (JFR)
+            JfrEvents.blockAnalyzed(block, transactions, nanos);
+    }
+
+    public static void blockExported(String file, long bytes, long nanos) {
+        BYTES_WRITTEN.add(bytes);
+        EXPORT.record(nanos);
+        if (JFR)
+            JfrEvents.blockExported(file, bytes, nanos);
+    }
+
+    // One line with the metrics that have been used, rates are per second of elapsedNanos
+    public static String summary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder(String.format(Locale.US, "[%.0fs]", seconds));
+        if (DOWNLOAD.getCount() > 0)
+            sb.append(String.format(Locale.US, " downloaded %d (%.1f/s, avg %.0f ms, max %.0f ms)", DOWNLOAD.getCount(),
+                    DOWNLOAD.getCount() / seconds, DOWNLOAD.getMeanNanos() / 1e6, DOWNLOAD.getMaxNanos() / 1e6));
+        if (EXPORT.getCount() > 0)
+            sb.append(String.format(Locale.US, " written %.1f MB (%.2f MB/s)", BYTES_WRITTEN.get() / 1e6,
+                    BYTES_WRITTEN.get() / 1e6 / seconds));
+        if (DESERIALIZE.getCount() > 0)
+            sb.append(String.format(Locale.US, " deserialize avg %.2f ms", DESERIALIZE.getMeanNanos() / 1e6));
+        if (BLOCKS.get() > 0)
+            sb.append(String.format(Locale.US, " analyzed %d blocks (%.1f/s) %d tx (%.0f/s)", BLOCKS.get(),
+                    BLOCKS.get() / seconds, TRANSACTIONS.get(), TRANSACTIONS.get() / seconds));
+        if (CLASSIFY_INPUT.getCount() > 0)
+            sb.append(String.format(Locale.US, " input %.2f us", CLASSIFY_INPUT.getMeanNanos() / 1e3));
+        if (CLASSIFY_OUTPUT.getCount() > 0)
+            sb.append(String.format(Locale.US, " output %.2f us", CLASSIFY_OUTPUT.getMeanNanos() / 1e3));
+        return sb.toString();
+    }
+
+    // Prints the summary every intervalMillis until closed, and once more when closed
+    public static Reporter startReporter(long intervalMillis) {
+        return new Reporter(intervalMillis);
+    }
+
+    public static class Reporter implements Closeable {
+        private final long startNanos = System.nanoTime();
+        private final ScheduledExecutorService executor;
+
+        Reporter(long intervalMillis) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "metrics");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    print();
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public void print() {
+            System.out.println(summary(System.nanoTime() - startNanos));
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            print();
+        }
+    }
+}
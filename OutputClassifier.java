@@ -0,0 +1,110 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.script.Script;
+
+import static org.bitcoinj.script.ScriptOpCodes.*;
+import static org.bitcoinj.tools.BlockAnalysis.isSentToMultiSig;
+
+/**
+ * Classifies a scriptPubKey directly on its serialized bytes.
+ * The standard templates are recognized by length and opcode offsets without building a
+ * Script. Any other script falls back to the bitcoinj predicates used before, so the flags
+ * returned are always the same as those computed from output.getScriptPubKey().
+ */
+public class OutputClassifier {
+    public static final int INVALID = 1;
+    public static final int OPRETURN = 1 << 1;
+    public static final int CLTV_PAYMENT_CHANNEL = 1 << 2;
+    public static final int P2SH = 1 << 3;
+    public static final int MULTISIG = 1 << 4;
+    public static final int ADDRESS = 1 << 5;
+    public static final int RAW_PUBKEY = 1 << 6;
+
+    // Returns the type flags of the scriptPubKey. Bare multisig scripts are added to ks.
+    public static int classify(byte[] script, BlockAnalysis.KeyStats ks) {
+        int len = script.length;
+
+        // OP_HASH160 [20-byte-hash-value] OP_EQUAL
+        if ((len == 23) && (op(script, 0) == OP_HASH160) && (script[1] == 20) && (op(script, 22) == OP_EQUAL))
+            return P2SH;
+
+        // OP_DUP OP_HASH160 <pubKeyHash> OP_EQUALVERIFY OP_CHECKSIG
+        if ((len == 25) && (op(script, 0) == OP_DUP) && (op(script, 1) == OP_HASH160) && (script[2] == 20)
+                && (op(script, 23) == OP_EQUALVERIFY) && (op(script, 24) == OP_CHECKSIG))
+            return ADDRESS;
+
+        // <pubkey> OP_CHECKSIG, compressed or uncompressed
+        if ((((len == 35) && (script[0] == 33)) || ((len == 67) && (script[0] == 65))) && (op(script, len - 1) == OP_CHECKSIG))
+            return RAW_PUBKEY;
+
+        // OP_RETURN [data]. The data pushes must still be well formed.
+        if ((len > 0) && (op(script, 0) == OP_RETURN))
+            return isParseable(script, 0, len) ? OPRETURN : INVALID;
+
+        // Witness programs: 0 <20-byte-key-hash> and 0 <32-byte-hash>. None of the types.
+        if (((len == 22) && (script[0] == OP_0) && (script[1] == 20)) || ((len == 34) && (script[0] == OP_0) && (script[1] == 32)))
+            return 0;
+
+        return classifyScript(script, ks);
+    }
+
+    // The general case, using the bitcoinj predicates
+    static int classifyScript(byte[] bytes, BlockAnalysis.KeyStats ks) {
+        Script script;
+        try {
+            script = new Script(bytes);
+        } catch (ScriptException e) {
+            // If script has errors, count as invalid
+            return INVALID;
+        }
+        int flags = 0;
+        if (script.isOpReturn())
+            flags |= OPRETURN;
+        if (script.isSentToCLTVPaymentChannel())
+            flags |= CLTV_PAYMENT_CHANNEL;
+        if (script.isPayToScriptHash())
+            flags |= P2SH;
+        if (isSentToMultiSig(script, ks)) // this is uncommon now, not a single case seen
+            flags |= MULTISIG;
+        if (script.isSentToAddress())
+            flags |= ADDRESS;
+        if (script.isSentToRawPubKey())
+            flags |= RAW_PUBKEY;
+        return flags;
+    }
+
+    // Returns true if new Script() would accept the bytes: every push must fit in the script
+    public static boolean isParseable(byte[] b, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            int opcode = b[i++] & 0xff;
+            long dataToRead;
+            if (opcode < OP_PUSHDATA1) {
+                dataToRead = opcode;
+            } else if (opcode == OP_PUSHDATA1) {
+                if (end - i < 1) return false;
+                dataToRead = b[i] & 0xff;
+                i += 1;
+            } else if (opcode == OP_PUSHDATA2) {
+                if (end - i < 2) return false;
+                dataToRead = (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8);
+                i += 2;
+            } else if (opcode == OP_PUSHDATA4) {
+                if (end - i < 4) return false;
+                dataToRead = (b[i] & 0xffL) | ((b[i + 1] & 0xffL) << 8) | ((b[i + 2] & 0xffL) << 16) | ((b[i + 3] & 0xffL) << 24);
+                i += 4;
+            } else {
+                continue;
+            }
+            if (dataToRead > end - i) return false;
+            i += (int) dataToRead;
+        }
+        return true;
+    }
+
+    static int op(byte[] script, int i) {
+        return script[i] & 0xff;
+    }
+}
@@ -0,0 +1,159 @@
+package org.bitcoinj.examples;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.tools.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a known list of blocks keeping up to window getBlock requests outstanding,
+ * spread over all the connected peers of a PeerGroup.
+ * A request that does not complete within the stall timeout, or that fails, is cancelled and
+ * sent again to another peer, up to maxAttempts times.
+ * Blocks are handed to the listener on the calling thread, in the order they arrive.
+ */
+public class ParallelBlockDownloader {
+    public interface Listener {
+        void onBlock(int index, Block block) throws Exception;
+    }
+
+    static final long POLL_MILLIS = 100;
+
+    private final PeerGroup peerGroup;
+    private final int window;
+    private final long stallMillis;
+    private final int maxAttempts;
+
+    // A getBlock request for hashes[index] sent to peer
+    static class Request {
+        final int index;
+        final Peer peer;
+        final ListenableFuture<Block> future;
+        final long startMillis;
+
+        Request(int index, Peer peer, ListenableFuture<Block> future) {
+            this.index = index;
+            this.peer = peer;
+            this.future = future;
+            this.startMillis = System.currentTimeMillis();
+        }
+    }
+
+    public ParallelBlockDownloader(PeerGroup peerGroup, int window, long stallMillis, int maxAttempts) {
+        this.peerGroup = peerGroup;
+        this.window = window;
+        this.stallMillis = stallMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void download(List<Sha256Hash> hashes, Listener listener) throws Exception {
+        int n = hashes.size();
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        for (int i = 0; i < n; i++)
+            pending.add(i);
+        int[] attempts = new int[n];
+        Peer[] lastPeer = new Peer[n];
+        Map<Integer, Request> inFlight = new HashMap<>();
+        Map<Peer, Integer> load = new HashMap<>();
+        final LinkedBlockingQueue<Request> completed = new LinkedBlockingQueue<>();
+
+        int done = 0;
+        while (done < n) {
+            while ((inFlight.size() < window) && !pending.isEmpty()) {
+                int index = pending.poll();
+                Peer peer = choosePeer(load, lastPeer[index]);
+                final Request r = new Request(index, peer, peer.getBlock(hashes.get(index)));
+                attempts[index]++;
+                lastPeer[index] = peer;
+                inFlight.put(index, r);
+                load.put(peer, load.containsKey(peer) ? load.get(peer) + 1 : 1);
+                r.future.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        completed.add(r);
+                    }
+                }, MoreExecutors.directExecutor());
+            }
+
+            // Handle every completion queued before looking for stalled requests, as the
+            // listener may have blocked while more requests completed
+            Request r = completed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            for (; r != null; r = completed.poll()) {
+                // Completions of requests that were already cancelled and reassigned are ignored
+                if (inFlight.get(r.index) != r)
+                    continue;
+                finish(r, inFlight, load);
+                Block block = null;
+                try {
+                    block = r.future.get();
+                } catch (ExecutionException | CancellationException e) {
+                    retry(r, hashes, attempts, pending, e);
+                }
+                if (block != null) {
+                    long latency = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - r.startMillis);
+                    Metrics.blockDownloaded(hashes.get(r.index).toString(), r.peer.toString(), attempts[r.index], latency);
+                    listener.onBlock(r.index, block);
+                    done++;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (Request s : new ArrayList<>(inFlight.values())) {
+                // A request that completed during the last listener call is handled in the next pass
+                if (!s.future.isDone() && (now - s.startMillis > stallMillis)) {
+                    finish(s, inFlight, load);
+                    s.future.cancel(true);
+                    retry(s, hashes, attempts, pending, null);
+                }
+            }
+        }
+    }
+
+    private void finish(Request r, Map<Integer, Request> inFlight, Map<Peer, Integer> load) {
+        inFlight.remove(r.index);
+        load.put(r.peer, load.get(r.peer) - 1);
+    }
+
+    private void retry(Request r, List<Sha256Hash> hashes, int[] attempts, ArrayDeque<Integer> pending, Exception cause) throws IOException {
+        String reason = (cause != null) ? "failed: " + cause : "stalled";
+        System.out.println("Request for block " + hashes.get(r.index) + " to " + r.peer + " " + reason);
+        if (attempts[r.index] >= maxAttempts)
+            throw new IOException("Block " + hashes.get(r.index) + " not received after " + attempts[r.index] + " attempts", cause);
+        pending.addFirst(r.index);
+    }
+
+    // The connected peer with fewest outstanding requests, avoiding the one that failed last if possible
+    private Peer choosePeer(Map<Peer, Integer> load, Peer avoid) throws Exception {
+        List<Peer> peers = peerGroup.getConnectedPeers();
+        while (peers.isEmpty()) {
+            peerGroup.waitForPeers(1).get();
+            peers = peerGroup.getConnectedPeers();
+        }
+        Peer best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Peer peer : peers) {
+            if ((peer == avoid) && (peers.size() > 1))
+                continue;
+            int l = load.containsKey(peer) ? load.get(peer) : 0;
+            if (l < bestLoad) {
+                best = peer;
+                bestLoad = l;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,155 @@
+package org.bitcoinj.tools;
+
+import java.util.Arrays;
+
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA1;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA2;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA4;
+
+/**
+ * The chunks of the scriptSigs of a transaction, as opcodes and (offset, length) slices of the
+ * scriptSig bytes, so no pushed data is copied. After all the scripts are added, validate() checks
+ * the signature encoding of every data push of every script in one loop, and InputClassifier reads
+ * the results instead of checking each push for each predicate.
+ * Scripts are split exactly as new Script() does; a script that it would reject has no chunks and
+ * isParsed() is false.
+ * Redeem scripts are added to the same instance while classifying, so they are split without
+ * being copied either. One instance is reused for every transaction: clear() keeps the arrays.
+ */
+public class ScriptPushes {
+    private byte[][] scripts = new byte[16][];
+    private boolean[] parsed = new boolean[16];
+    // Chunks of script k are first[k]..first[k + 1] - 1
+    private int[] first = new int[17];
+    private int[] opcode = new int[64];
+    private int[] offset = new int[64];
+    private int[] length = new int[64];
+    private boolean[] signature = new boolean[64];
+    private int numScripts = 0;
+    private int numChunks = 0;
+
+    public void clear() {
+        numScripts = 0;
+        numChunks = 0;
+    }
+
+    // Splits the script into chunks and returns its number
+    public int add(byte[] script) {
+        return add(script, 0, script.length);
+    }
+
+    // Same for the script in b[offset..offset+length), e.g. a redeem script pushed by a script
+    // already added. Chunk offsets are in b.
+    public int add(byte[] b, int offset, int length) {
+        if (numScripts + 1 == scripts.length) {
+            scripts = Arrays.copyOf(scripts, scripts.length * 2);
+            parsed = Arrays.copyOf(parsed, parsed.length * 2);
+            first = Arrays.copyOf(first, first.length * 2);
+        }
+        int k = numScripts++;
+        scripts[k] = b;
+        first[k] = numChunks;
+        parsed[k] = split(b, offset, offset + length);
+        if (!parsed[k])
+            numChunks = first[k];
+        first[k + 1] = numChunks;
+        return k;
+    }
+
+    private boolean split(byte[] b, int i, int end) {
+        while (i < end) {
+            int op = b[i++] & 0xff;
+            long dataToRead;
+            if (op < OP_PUSHDATA1) {
+                dataToRead = op;
+            } else if (op == OP_PUSHDATA1) {
+                if (end - i < 1) return false;
+                dataToRead = b[i] & 0xff;
+                i += 1;
+            } else if (op == OP_PUSHDATA2) {
+                if (end - i < 2) return false;
+                dataToRead = (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8);
+                i += 2;
+            } else if (op == OP_PUSHDATA4) {
+                if (end - i < 4) return false;
+                dataToRead = (b[i] & 0xffL) | ((b[i + 1] & 0xffL) << 8) | ((b[i + 2] & 0xffL) << 16) | ((b[i + 3] & 0xffL) << 24);
+                i += 4;
+            } else {
+                dataToRead = -1;
+            }
+            if (dataToRead > end - i) return false;
+            addChunk(op, i, (int) Math.max(dataToRead, 0));
+            if (dataToRead > 0)
+                i += (int) dataToRead;
+        }
+        return true;
+    }
+
+    private void addChunk(int op, int off, int len) {
+        if (numChunks == opcode.length) {
+            int size = opcode.length * 2;
+            opcode = Arrays.copyOf(opcode, size);
+            offset = Arrays.copyOf(offset, size);
+            length = Arrays.copyOf(length, size);
+            signature = Arrays.copyOf(signature, size);
+        }
+        opcode[numChunks] = op;
+        offset[numChunks] = off;
+        length[numChunks] = len;
+        // Set by validate(); chunks added after it, like redeem scripts, are not signatures
+        signature[numChunks] = false;
+        numChunks++;
+    }
+
+    // Checks the signature encoding of all the data pushes added
+    public void validate() {
+        for (int k = 0; k < numScripts; k++) {
+            byte[] b = scripts[k];
+            for (int c = first[k]; c < first[k + 1]; c++)
+                signature[c] = (opcode[c] <= OP_PUSHDATA4) && SignatureValidator.isValidEncoding(b, offset[c], length[c]);
+        }
+    }
+
+    public int size() {
+        return numScripts;
+    }
+
+    public boolean isParsed(int k) {
+        return parsed[k];
+    }
+
+    public byte[] getScript(int k) {
+        return scripts[k];
+    }
+
+    // Index of the first chunk of script k; chunks are numbered across all the scripts
+    public int getFirst(int k) {
+        return first[k];
+    }
+
+    public int getChunkCount(int k) {
+        return first[k + 1] - first[k];
+    }
+
+    public int getOpcode(int c) {
+        return opcode[c];
+    }
+
+    // A push of data (possibly empty, as OP_0), not OP_1..OP_16 or another opcode
+    public boolean isData(int c) {
+        return opcode[c] <= OP_PUSHDATA4;
+    }
+
+    public int getOffset(int c) {
+        return offset[c];
+    }
+
+    public int getLength(int c) {
+        return length[c];
+    }
+
+    // The push is a DER encoded signature, as checked by validate()
+    public boolean isSignature(int c) {
+        return signature[c];
+    }
+}
@@ -0,0 +1,125 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.script.ScriptOpCodes;
+
+import static org.bitcoinj.script.ScriptOpCodes.OP_0;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA1;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA2;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA4;
+
+/**
+ * The shape of a script: its opcodes, with the data of each push replaced by a length class.
+ * Scripts that only differ in their keys, signatures or hashes have the same template.
+ * fingerprint() walks the raw bytes without allocating, so it can be used in the analysis loop;
+ * render() gives the readable form, e.g. "0 <sig> <sig> <76-255>", and is meant for reports.
+ * A script cut short in the middle of a push ends with a "<truncated>" token.
+ */
+public class ScriptTemplate {
+    // Upper bound of each length class, with its name
+    static final int[] CLASS_MAX = {0, 8, 19, 20, 31, 32, 33, 64, 65, 69, 73, 75, 255, 520, Integer.MAX_VALUE};
+    static final String[] CLASS_NAMES = {"<0>", "<1-8>", "<9-19>", "<20>", "<21-31>", "<32>", "<33>", "<34-64>",
+            "<65>", "<66-69>", "<sig>", "<74-75>", "<76-255>", "<256-520>", "<521+>"};
+    static final int TRUNCATED = 0x100 + CLASS_NAMES.length;
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    static int lengthClass(long length) {
+        for (int c = 0; ; c++) {
+            if (length <= CLASS_MAX[c])
+                return c;
+        }
+    }
+
+    // Length of the data pushed by the opcode at offset, or -1 if it is not a data push
+    // or the script ends before its data does
+    static long pushLength(byte[] script, int offset) {
+        int op = script[offset] & 0xff;
+        if ((op > OP_0) && (op < OP_PUSHDATA1))
+            return op;
+        if (op == OP_PUSHDATA1)
+            return (offset + 1 < script.length) ? script[offset + 1] & 0xff : -1;
+        if (op == OP_PUSHDATA2)
+            return (offset + 2 < script.length) ? (script[offset + 1] & 0xff) | ((script[offset + 2] & 0xff) << 8) : -1;
+        if (op == OP_PUSHDATA4) {
+            if (offset + 4 >= script.length)
+                return -1;
+            return (script[offset + 1] & 0xffL) | ((script[offset + 2] & 0xffL) << 8)
+                    | ((script[offset + 3] & 0xffL) << 16) | ((script[offset + 4] & 0xffL) << 24);
+        }
+        return -1;
+    }
+
+    static int lengthSize(int op) {
+        if (op == OP_PUSHDATA1)
+            return 1;
+        if (op == OP_PUSHDATA2)
+            return 2;
+        if (op == OP_PUSHDATA4)
+            return 4;
+        return 0;
+    }
+
+    public static long fingerprint(byte[] script) {
+        return fingerprint(script, 0, script.length);
+    }
+
+    // 64-bit FNV-1a hash of the template tokens of script[offset..offset+length)
+    public static long fingerprint(byte[] script, int offset, int length) {
+        long h = FNV_OFFSET;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int op = script[i] & 0xff;
+            int token;
+            int next;
+            if ((op == OP_0) || (op > OP_PUSHDATA4)) {
+                token = op;
+                next = i + 1;
+            } else {
+                long n = pushLength(script, i);
+                long dataEnd = i + 1 + lengthSize(op) + n;
+                if ((n < 0) || (dataEnd > end)) {
+                    token = TRUNCATED;
+                    next = end;
+                } else {
+                    token = 0x100 + lengthClass(n);
+                    next = (int) dataEnd;
+                }
+            }
+            h = (h ^ (token & 0xff)) * FNV_PRIME;
+            h = (h ^ (token >>> 8)) * FNV_PRIME;
+            i = next;
+        }
+        return h;
+    }
+
+    public static String render(byte[] script) {
+        return render(script, 0, script.length);
+    }
+
+    public static String render(byte[] script, int offset, int length) {
+        StringBuilder sb = new StringBuilder();
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            int op = script[i] & 0xff;
+            if ((op == OP_0) || (op > OP_PUSHDATA4)) {
+                sb.append(ScriptOpCodes.getOpCodeName(op));
+                i++;
+                continue;
+            }
+            long n = pushLength(script, i);
+            long dataEnd = i + 1 + lengthSize(op) + n;
+            if ((n < 0) || (dataEnd > end)) {
+                sb.append("<truncated>");
+                break;
+            }
+            sb.append(CLASS_NAMES[lengthClass(n)]);
+            i = (int) dataEnd;
+        }
+        return sb.toString();
+    }
+}
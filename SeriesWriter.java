@@ -0,0 +1,71 @@
+package org.bitcoinj.tools;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Writes the segwit ratios and the input and output type shares of a sliding window of blocks
+ * as CSV, one row every step blocks and one for the last block. Blocks must be added in chain order.
+ * Each row is labeled with the height (or position, if the height is unknown) of the last block of
+ * its window; the first rows cover fewer blocks than the window length, as the blocks column shows.
+ * Shares are percentages of all the inputs or outputs in the window, as in BlockStats.print().
+ */
+public class SeriesWriter implements Closeable {
+    static final String HEADER = "height,blocks,transactions,segNoSegRatio,segTotalRatio,"
+            + "inP2PKH,inP2SH,inP2SH_MULTISIG,inP2SH_PK,inP2PK,inMULTISIG,"
+            + "outOpReturn,outP2SH,outMultiSig,outAddress,outRawPubKey,outUnknown";
+
+    private final PrintWriter out;
+    private final SlidingWindow window;
+    private final int step;
+    private int added = 0;
+    private int lastHeight = -1;
+
+    public SeriesWriter(File file, int windowBlocks, int step) throws IOException {
+        this.out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        this.window = new SlidingWindow(windowBlocks);
+        this.step = step;
+        out.println(HEADER);
+    }
+
+    public void add(int height, long[] counters) {
+        window.add(counters);
+        added++;
+        lastHeight = height;
+        if (added % step == 0)
+            writeRow(height);
+    }
+
+    private void writeRow(int height) {
+        BlockStats s = BlockStats.fromArray(window.getSum());
+        long segNoSegSize = s.acMainChainSpace + s.acSegwitSpace;
+        out.println(String.format(Locale.US, "%d,%d,%d,%.4f,%.4f,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
+                height, window.size(), s.acTransactions,
+                1.0 * s.acSegwitSpace / s.acMainChainSpace, 1.0 * s.acTotalSize / segNoSegSize,
+                share(s.acInputP2PKH, s.acInputs), share(s.acInputP2SH, s.acInputs),
+                share(s.acInputP2SH_MULTISIG, s.acInputs), share(s.acInputP2SH_PK, s.acInputs),
+                share(s.acInputP2PK, s.acInputs), share(s.acInputMULTISIG, s.acInputs),
+                share(s.acOpReturn, s.acOutputs), share(s.acPayToScriptHash, s.acOutputs),
+                share(s.acSentToMultiSig, s.acOutputs), share(s.acSentToAddress, s.acOutputs),
+                share(s.acSentToRawPubKey, s.acOutputs), share(s.acUnknown, s.acOutputs)));
+    }
+
+    private static String share(long n, long total) {
+        return (total == 0) ? "" : String.format(Locale.US, "%.2f", BlockAnalysis.getPercent(n, total));
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The blocks after the last full step
+        if (added % step != 0)
+            writeRow(lastHeight);
+        out.close();
+        if (out.checkError())
+            throw new IOException("Cannot write series");
+    }
+}
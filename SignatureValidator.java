@@ -0,0 +1,87 @@
+package org.bitcoinj.tools;
+
+/**
+ * Encoding checks of signatures and public keys on a slice of a larger array, usually a push
+ * inside a script, so the pushed data does not have to be copied out first.
+ * isValidEncoding() is the check of BlockAnalysis.IsValidSignatureEncoding and
+ * isPubKeyCanonical() the one of ECKey.isPubKeyCanonical().
+ */
+public class SignatureValidator {
+
+    public static boolean isValidEncoding(byte[] b, int offset, int length) {
+        // Format: 0x30 [total-length] 0x02 [R-length] [R] 0x02 [S-length] [S] [sighash]
+        // * total-length: 1-byte length descriptor of everything that follows,
+        //   excluding the sighash byte.
+        // * R-length: 1-byte length descriptor of the R value that follows.
+        // * R: arbitrary-length big-endian encoded R value. It must use the shortest
+        //   possible encoding for a positive integers (which means no null bytes at
+        //   the start, except a single one when the next byte has its highest bit set).
+        // * S-length: 1-byte length descriptor of the S value that follows.
+        // * S: arbitrary-length big-endian encoded S value. The same rules apply.
+        // * sighash: 1-byte value indicating what data is hashed (not part of the DER
+        //   signature)
+
+        // Minimum and maximum size constraints.
+        if (length < 9) return false;
+        if (length > 73) return false;
+
+        // A signature is of type 0x30 (compound).
+        if (b[offset] != 0x30) return false;
+
+        // Make sure the length covers the entire signature.
+        if ((b[offset + 1] & 0xff) != length - 3) return false;
+
+        // Extract the length of the R element. Lengths are unsigned, a length byte of
+        // 0x80 or more never fits in 73 bytes.
+        int lenR = b[offset + 3] & 0xff;
+
+        // Make sure the length of the S element is still inside the signature.
+        if (5 + lenR >= length) return false;
+
+        // Extract the length of the S element.
+        int lenS = b[offset + 5 + lenR] & 0xff;
+
+        // Verify that the length of the signature matches the sum of the length
+        // of the elements.
+        if ((lenR + lenS + 7) != length) return false;
+
+        // Check whether the R element is an integer.
+        if (b[offset + 2] != 0x02) return false;
+
+        // Zero-length integers are not allowed for R.
+        if (lenR == 0) return false;
+
+        // Negative numbers are not allowed for R.
+        if ((b[offset + 4] & 0x80) != 0) return false;
+
+        // Null bytes at the start of R are not allowed, unless R would
+        // otherwise be interpreted as a negative number.
+        if ((lenR > 1) && (b[offset + 4] == 0x00) && ((b[offset + 5] & 0x80) == 0)) return false;
+
+        // Check whether the S element is an integer.
+        if (b[offset + lenR + 4] != 0x02) return false;
+
+        // Zero-length integers are not allowed for S.
+        if (lenS == 0) return false;
+
+        // Negative numbers are not allowed for S.
+        if ((b[offset + lenR + 6] & 0x80) != 0) return false;
+
+        // Null bytes at the start of S are not allowed, unless S would otherwise be
+        // interpreted as a negative number.
+        if ((lenS > 1) && (b[offset + lenR + 6] == 0x00) && ((b[offset + lenR + 7] & 0x80) == 0)) return false;
+
+        return true;
+    }
+
+    // Compressed (0x02/0x03, 33 bytes) or uncompressed (0x04, 65 bytes) public key
+    public static boolean isPubKeyCanonical(byte[] b, int offset, int length) {
+        if (length < 33)
+            return false;
+        if (b[offset] == 0x04)
+            return length == 65;
+        if ((b[offset] == 0x02) || (b[offset] == 0x03))
+            return length == 33;
+        return false;
+    }
+}
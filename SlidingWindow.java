@@ -0,0 +1,41 @@
+package org.bitcoinj.tools;
+
+/**
+ * Sums of the per-block counters (BlockStats.toArray()) over the last n blocks added.
+ * Adding a block adds its counters to the sums and subtracts those of the block that leaves the
+ * window, so the cost of a block does not depend on n. The counters are copied into a ring of
+ * preallocated rows, so the window itself allocates nothing per block; the BlockStats and the
+ * toArray() copy that the caller makes for each block are its own.
+ */
+public class SlidingWindow {
+    private final long[][] ring;
+    private final long[] sum = new long[BlockStats.FIELD_COUNT];
+    private int size = 0;
+    private int next = 0;
+
+    public SlidingWindow(int blocks) {
+        ring = new long[blocks][BlockStats.FIELD_COUNT];
+    }
+
+    public void add(long[] counters) {
+        long[] slot = ring[next];
+        boolean full = (size == ring.length);
+        for (int f = 0; f < sum.length; f++) {
+            sum[f] += counters[f] - (full ? slot[f] : 0);
+            slot[f] = counters[f];
+        }
+        next = (next + 1) % ring.length;
+        if (!full)
+            size++;
+    }
+
+    // Number of blocks in the window, less than its length until enough blocks are added
+    public int size() {
+        return size;
+    }
+
+    // The sums of the blocks in the window; the array changes with the next add()
+    public long[] getSum() {
+        return sum;
+    }
+}
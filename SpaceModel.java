@@ -0,0 +1,268 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.VarInt;
+
+/**
+ * What-if model of the space a transaction would take if its inputs and outputs were converted
+ * to other script types. Given the type flags found by InputClassifier and OutputClassifier and
+ * the script sizes, a model returns the bytes that would go in the main chain (counted in full
+ * towards the block size) and in the witness (discounted by 4 in block weight).
+ * Models are pure functions of these arguments, so one pass over the blocks evaluates all of
+ * MODELS on the same parsed transactions. Coinbase inputs are not passed to models.
+ * The first model, ORIGINAL, is the estimate this tool has always made; it fills acMainChainSpace
+ * and acSegwitSpace.
+ * All models but ORIGINAL count the length of the scriptSig they keep in the main chain (see
+ * scriptSig()), as OUTPUT_FIXED counts that of the output script. ORIGINAL leaves it out, as it
+ * always has.
+ */
+public abstract class SpaceModel {
+    // Fixed overhead of a transaction, an input and an output without their scripts
+    static final int TRANSACTION_FIXED = 10;
+    static final int INPUT_FIXED = 40;
+    static final int OUTPUT_FIXED = 9;
+    // Segwit marker and flag, added once per transaction with witness data
+    static final int WITNESS_HEADER = 2;
+
+    private final String name;
+
+    protected SpaceModel(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double transactionMainChain() {
+        return TRANSACTION_FIXED;
+    }
+
+    // Witness bytes of a transaction that has at least one witness input
+    public double transactionWitness() {
+        return WITNESS_HEADER;
+    }
+
+    public abstract double inputMainChain(int type, int scriptSigSize);
+
+    public abstract double inputWitness(int type, int scriptSigSize);
+
+    public abstract double outputMainChain(int type, int scriptSize);
+
+    static boolean is(int type, int flag) {
+        return (type & flag) != 0;
+    }
+
+    // A scriptSig of size bytes with its length, 1 byte when the scriptSig is empty
+    static int scriptSig(int size) {
+        return VarInt.sizeOf(size) + size;
+    }
+
+    // Nothing changes
+    static class Legacy extends SpaceModel {
+        Legacy() {
+            super("legacy");
+        }
+
+        @Override
+        public double transactionWitness() {
+            return 0;
+        }
+
+        @Override
+        public double inputMainChain(int type, int scriptSigSize) {
+            return INPUT_FIXED + scriptSig(scriptSigSize);
+        }
+
+        @Override
+        public double inputWitness(int type, int scriptSigSize) {
+            return 0;
+        }
+
+        @Override
+        public double outputMainChain(int type, int scriptSize) {
+            return OUTPUT_FIXED + scriptSize;
+        }
+    }
+
+    // The scriptSigs of P2PKH and P2SH inputs move to the witness; P2SH outputs become
+    // 0 <32-byte-hash> and P2PKH outputs 0 <20-byte-key-hash>
+    static class Original extends SpaceModel {
+        Original() {
+            super("original");
+        }
+
+        @Override
+        public double transactionWitness() {
+            return 0;
+        }
+
+        @Override
+        public double inputMainChain(int type, int scriptSigSize) {
+            boolean moved = is(type, InputClassifier.P2PKH) || is(type, InputClassifier.P2SH);
+            return INPUT_FIXED + (moved ? 0 : scriptSigSize);
+        }
+
+        @Override
+        public double inputWitness(int type, int scriptSigSize) {
+            // P2PKH turns witness, P2SH turns into P2WSH
+            return (is(type, InputClassifier.P2PKH) ? scriptSigSize : 0) + (is(type, InputClassifier.P2SH) ? scriptSigSize : 0);
+        }
+
+        @Override
+        public double outputMainChain(int type, int scriptSize) {
+            boolean p2sh = is(type, OutputClassifier.P2SH);
+            boolean address = is(type, OutputClassifier.ADDRESS);
+            double bytes = OUTPUT_FIXED;
+            // Original sig:  OP_HASH160 [20-byte-hash-value] OP_EQUAL (22 bytes total)
+            // New sig: 0 <32-byte-hash> (0x0020{32-byte-hash})
+            if (p2sh)
+                bytes += 33;
+            // scriptPubKey: OP_DUP OP_HASH160 <pubKeyHash> OP_EQUALVERIFY OP_CHECKSIG (25 bytes)
+            // new: 0 <20-byte-key-hash> (0x0014{20-byte-key-hash}) (22)
+            if (address)
+                bytes += 22;
+            if (!p2sh && !address)
+                bytes += scriptSize;
+            return bytes;
+        }
+    }
+
+    // P2PKH and P2SH are spent and paid as native P2WPKH and P2WSH. The scriptSig pushes become
+    // witness items of the same size, plus the item count; the scriptSig itself is empty.
+    static class NativeSegwit extends SpaceModel {
+        NativeSegwit() {
+            this("p2wpkh-p2wsh");
+        }
+
+        NativeSegwit(String name) {
+            super(name);
+        }
+
+        static boolean converted(int type) {
+            return is(type, InputClassifier.P2PKH) || is(type, InputClassifier.P2SH);
+        }
+
+        @Override
+        public double inputMainChain(int type, int scriptSigSize) {
+            return INPUT_FIXED + scriptSig(converted(type) ? 0 : scriptSigSize);
+        }
+
+        @Override
+        public double inputWitness(int type, int scriptSigSize) {
+            return converted(type) ? scriptSigSize + 1 : 0;
+        }
+
+        @Override
+        public double outputMainChain(int type, int scriptSize) {
+            if (is(type, OutputClassifier.P2SH))
+                return OUTPUT_FIXED + 34;
+            if (is(type, OutputClassifier.ADDRESS))
+                return OUTPUT_FIXED + 22;
+            return OUTPUT_FIXED + scriptSize;
+        }
+    }
+
+    // Segwit nested in P2SH: the scriptSig keeps one push of the witness program
+    // (22 bytes for P2WPKH, 34 for P2WSH) and every output is a P2SH output
+    static class WrappedSegwit extends NativeSegwit {
+        WrappedSegwit() {
+            super("p2sh-wrapped");
+        }
+
+        @Override
+        public double inputMainChain(int type, int scriptSigSize) {
+            if (is(type, InputClassifier.P2SH))
+                return INPUT_FIXED + scriptSig(35);
+            if (is(type, InputClassifier.P2PKH))
+                return INPUT_FIXED + scriptSig(23);
+            return INPUT_FIXED + scriptSig(scriptSigSize);
+        }
+
+        @Override
+        public double outputMainChain(int type, int scriptSize) {
+            if (is(type, OutputClassifier.P2SH) || is(type, OutputClassifier.ADDRESS))
+                return OUTPUT_FIXED + 23;
+            return OUTPUT_FIXED + scriptSize;
+        }
+    }
+
+    // Single-key and multisig (aggregated into one key) inputs are Taproot key-path spends: one
+    // 64-byte Schnorr signature in the witness. Their outputs become 34-byte P2TR scripts.
+    static class TaprootKeyPath extends SpaceModel {
+        static final int INPUTS = InputClassifier.P2PKH | InputClassifier.P2PK | InputClassifier.P2SH | InputClassifier.MULTISIG;
+        static final int OUTPUTS = OutputClassifier.ADDRESS | OutputClassifier.RAW_PUBKEY | OutputClassifier.P2SH | OutputClassifier.MULTISIG;
+
+        TaprootKeyPath() {
+            super("p2tr-keypath");
+        }
+
+        @Override
+        public double inputMainChain(int type, int scriptSigSize) {
+            return INPUT_FIXED + scriptSig(is(type, INPUTS) ? 0 : scriptSigSize);
+        }
+
+        @Override
+        public double inputWitness(int type, int scriptSigSize) {
+            // item count, signature length, signature
+            return is(type, INPUTS) ? 1 + 1 + 64 : 0;
+        }
+
+        @Override
+        public double outputMainChain(int type, int scriptSize) {
+            return OUTPUT_FIXED + (is(type, OUTPUTS) ? 34 : scriptSize);
+        }
+    }
+
+    // A fraction of the inputs and outputs follows the adopted model and the rest the legacy one.
+    // The space is the expected value, so results are fractional.
+    static class Mix extends SpaceModel {
+        private final SpaceModel adopted;
+        private final SpaceModel rest;
+        private final double fraction;
+
+        Mix(SpaceModel adopted, SpaceModel rest, double fraction) {
+            super(adopted.getName() + "-" + Math.round(fraction * 100) + "%");
+            this.adopted = adopted;
+            this.rest = rest;
+            this.fraction = fraction;
+        }
+
+        private double mix(double a, double b) {
+            return fraction * a + (1 - fraction) * b;
+        }
+
+        @Override
+        public double transactionWitness() {
+            return mix(adopted.transactionWitness(), rest.transactionWitness());
+        }
+
+        @Override
+        public double inputMainChain(int type, int scriptSigSize) {
+            return mix(adopted.inputMainChain(type, scriptSigSize), rest.inputMainChain(type, scriptSigSize));
+        }
+
+        @Override
+        public double inputWitness(int type, int scriptSigSize) {
+            return mix(adopted.inputWitness(type, scriptSigSize), rest.inputWitness(type, scriptSigSize));
+        }
+
+        @Override
+        public double outputMainChain(int type, int scriptSize) {
+            return mix(adopted.outputMainChain(type, scriptSize), rest.outputMainChain(type, scriptSize));
+        }
+    }
+
+    public static final SpaceModel ORIGINAL = new Original();
+    public static final SpaceModel LEGACY = new Legacy();
+
+    // Evaluated by every analysis; ORIGINAL must stay first
+    public static final SpaceModel[] MODELS = {
+            ORIGINAL,
+            LEGACY,
+            new NativeSegwit(),
+            new WrappedSegwit(),
+            new TaprootKeyPath(),
+            new Mix(new NativeSegwit(), LEGACY, 0.25),
+            new Mix(new NativeSegwit(), LEGACY, 0.5),
+    };
+}
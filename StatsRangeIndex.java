@@ -0,0 +1,115 @@
+package org.bitcoinj.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prefix sums of the per-block counters kept in a BlockStatsStore, indexed by height.
+ * The totals of any contiguous height range are the difference of two prefix rows, so a
+ * query never touches block data and costs the same for 10 blocks or the whole chain.
+ * Only the heights that have a row are indexed, in a sorted array searched by binary search, so
+ * a store with a few blocks far apart takes as little memory as one with the same blocks in a row.
+ * Rows without a known height are not indexed. If a height has more than one block
+ * (stale blocks), only the one stored last is used: a block analyzed after a reorganization
+ * replaces the block it reorganized away.
+ */
+public class StatsRangeIndex {
+    // Indexed heights, in increasing order
+    private final int[] heights;
+    // prefix[i * FIELD_COUNT + f] = sum of counter f over the first i heights
+    private final long[] prefix;
+    private int duplicates = 0;
+
+    public StatsRangeIndex(Collection<BlockStatsStore.Row> rows) {
+        List<BlockStatsStore.Row> indexed = new ArrayList<>();
+        for (BlockStatsStore.Row row : rows) {
+            if (row.height >= 0)
+                indexed.add(row);
+        }
+        // The sort is stable and rows come in the order they were stored, so the last row of
+        // each height is the block stored last
+        Collections.sort(indexed, new Comparator<BlockStatsStore.Row>() {
+            @Override
+            public int compare(BlockStatsStore.Row a, BlockStatsStore.Row b) {
+                return Integer.compare(a.height, b.height);
+            }
+        });
+        for (int i = 1; i < indexed.size(); i++) {
+            int height = indexed.get(i).height;
+            if ((indexed.get(i - 1).height == height) && ((i < 2) || (indexed.get(i - 2).height != height)))
+                duplicates++;
+        }
+        int n = 0;
+        for (BlockStatsStore.Row row : indexed) {
+            if ((n > 0) && (indexed.get(n - 1).height == row.height))
+                indexed.set(n - 1, row);
+            else
+                indexed.set(n++, row);
+        }
+
+        int f = BlockStats.FIELD_COUNT;
+        heights = new int[n];
+        prefix = new long[(n + 1) * f];
+        for (int i = 0; i < n; i++) {
+            BlockStatsStore.Row row = indexed.get(i);
+            heights[i] = row.height;
+            for (int j = 0; j < f; j++)
+                prefix[(i + 1) * f + j] = prefix[i * f + j] + row.counters[j];
+        }
+    }
+
+    // Number of heights indexed
+    public int size() {
+        return heights.length;
+    }
+
+    // The i-th height indexed, in increasing order
+    public int getHeight(int i) {
+        return heights[i];
+    }
+
+    public int getFirstHeight() {
+        return (heights.length > 0) ? heights[0] : 0;
+    }
+
+    public int getLastHeight() {
+        return (heights.length > 0) ? heights[heights.length - 1] : -1;
+    }
+
+    // Number of heights that had more than one block
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    // Position in heights of the first height >= height
+    private int position(int height) {
+        int i = Arrays.binarySearch(heights, height);
+        return (i >= 0) ? i : -i - 1;
+    }
+
+    // Counters summed over the heights from..to, both included
+    public long[] sum(int from, int to) {
+        int a = position(from);
+        int b = Math.max(a, position(to + 1));
+        int f = BlockStats.FIELD_COUNT;
+        long[] result = new long[f];
+        for (int j = 0; j < f; j++)
+            result[j] = prefix[b * f + j] - prefix[a * f + j];
+        return result;
+    }
+
+    public BlockStats query(int from, int to) {
+        return BlockStats.fromArray(sum(from, to));
+    }
+
+    // Number of blocks with results in the heights from..to, both included
+    public int countBlocks(int from, int to) {
+        int a = position(from);
+        int b = Math.max(a, position(to + 1));
+        return b - a;
+    }
+}
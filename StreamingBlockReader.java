@@ -0,0 +1,240 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Reads the transactions of a serialized block one at a time, without deserializing the block.
+ * The end of each transaction is found by walking its raw bytes, then only that transaction is
+ * copied into a reusable buffer and parsed. bitcoinj 0.14 cannot parse the segwit serialization, so
+ * the segwit marker, flag and witnesses are left out of the copy: the Transaction is the one a node
+ * sends to peers that do not ask for witnesses, with the same hash (txid). The witness bytes are
+ * still measured, see getWitnessSize(). A Transaction returned by next() does not reference the
+ * buffer, but the analysis is meant to drop it before asking for the next one: that way the heap
+ * used per block is bounded by the largest transaction instead of the whole block.
+ * The time spent in open() and next() on a block is recorded in Metrics.DESERIALIZE once its last
+ * transaction has been read or skipped, and so is the time of makeBlock().
+ * A reader is not thread-safe; use one per worker.
+ */
+public class StreamingBlockReader {
+    static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final NetworkParameters params;
+    private ByteBuffer block;
+    private final byte[] header = new byte[Block.HEADER_SIZE];
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private long numTransactions;
+    private long read;
+    // Position of the next unread byte of the block
+    private int cursor;
+    // Sizes of the last transaction read or skipped, as serialized in the block
+    private int totalSize;
+    private int witnessSize;
+    // Position of the witnesses of the last transaction, if it has any
+    private int witnessStart;
+    // Time spent deserializing the current block so far; stripWitnesses() does not record it
+    private long nanos;
+    private boolean timed = true;
+
+    public StreamingBlockReader(NetworkParameters params) {
+        this.params = params;
+    }
+
+    // Starts reading the block that goes from the position to the limit of the buffer
+    public void open(ByteBuffer serializedBlock) throws ProtocolException {
+        long start = System.nanoTime();
+        block = serializedBlock.slice().order(ByteOrder.LITTLE_ENDIAN);
+        cursor = 0;
+        check(Block.HEADER_SIZE);
+        block.position(0);
+        block.get(header);
+        cursor = Block.HEADER_SIZE;
+        numTransactions = readVarInt();
+        read = 0;
+        nanos = System.nanoTime() - start;
+    }
+
+    public Sha256Hash getHash() {
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(header));
+    }
+
+    public int getTransactionCount() {
+        return (int) numTransactions;
+    }
+
+    public boolean hasNext() {
+        return read < numTransactions;
+    }
+
+    // The next transaction of the block
+    public Transaction next() throws ProtocolException {
+        if (!hasNext())
+            throw new ProtocolException("No more transactions in block " + getHash());
+        long startNanos = System.nanoTime();
+        int start = cursor;
+        skipTransaction();
+        int length = getBaseSize();
+        if (buffer.length < length)
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        copyBase(start, buffer, 0);
+        Transaction t = new Transaction(params, buffer, 0);
+        nanos += System.nanoTime() - startNanos;
+        read++;
+        recordIfDone();
+        return t;
+    }
+
+    // The block without the segwit marker, flag and witnesses of its transactions, as a node sends it
+    // to peers that do not ask for witnesses. bitcoinj can only parse blocks in that form.
+    public static byte[] stripWitnesses(NetworkParameters params, ByteBuffer serializedBlock) throws ProtocolException {
+        StreamingBlockReader reader = new StreamingBlockReader(params);
+        reader.timed = false;
+        reader.open(serializedBlock);
+        byte[] stripped = new byte[reader.block.limit()];
+        // Header and transaction count are kept as they are
+        reader.block.position(0);
+        reader.block.get(stripped, 0, reader.cursor);
+        int n = reader.cursor;
+        while (reader.hasNext()) {
+            int start = reader.cursor;
+            reader.skip();
+            reader.copyBase(start, stripped, n);
+            n += reader.getBaseSize();
+        }
+        return (n == stripped.length) ? stripped : Arrays.copyOf(stripped, n);
+    }
+
+    // Deserializes the block, without the witnesses of its transactions, see stripWitnesses()
+    public static Block makeBlock(NetworkParameters params, ByteBuffer serializedBlock) throws ProtocolException {
+        long start = System.nanoTime();
+        Block block = params.getDefaultSerializer().makeBlock(stripWitnesses(params, serializedBlock));
+        Metrics.DESERIALIZE.record(System.nanoTime() - start);
+        return block;
+    }
+
+    // Moves past the next transaction without deserializing it
+    public void skip() throws ProtocolException {
+        if (!hasNext())
+            throw new ProtocolException("No more transactions in block " + getHash());
+        skipTransaction();
+        read++;
+        recordIfDone();
+    }
+
+    private void recordIfDone() {
+        if (timed && !hasNext())
+            Metrics.DESERIALIZE.record(nanos);
+    }
+
+    // Size of the last transaction read or skipped, witness included
+    public int getTotalSize() {
+        return totalSize;
+    }
+
+    // Size of the last transaction without the segwit marker, flag and witnesses (BIP 141 base size)
+    public int getBaseSize() {
+        return totalSize - witnessSize;
+    }
+
+    // Bytes of the segwit marker, flag and witnesses of the last transaction, 0 if it has none
+    public int getWitnessSize() {
+        return witnessSize;
+    }
+
+    // BIP 141 weight of the last transaction: base size * 3 + total size
+    public int getWeight() {
+        return getBaseSize() * 3 + totalSize;
+    }
+
+    // Copies the last transaction read or skipped, which starts at start, to b at offset, without
+    // the segwit marker, flag and witnesses: version, inputs and outputs, lock time
+    private void copyBase(int start, byte[] b, int offset) {
+        if (witnessSize == 0) {
+            block.position(start);
+            block.get(b, offset, totalSize);
+            return;
+        }
+        int end = start + totalSize;
+        block.position(start);
+        block.get(b, offset, 4);
+        block.position(start + 6);
+        block.get(b, offset + 4, witnessStart - start - 6);
+        block.position(end - 4);
+        block.get(b, offset + witnessStart - start - 2, 4);
+    }
+
+    // Moves the cursor past the transaction starting at it: version, inputs, outputs,
+    // witnesses if the segwit marker is present, and lock time
+    private void skipTransaction() throws ProtocolException {
+        int start = cursor;
+        witnessSize = 0;
+        skip(4);
+        check(2);
+        boolean witness = (block.get(cursor) == 0) && (block.get(cursor + 1) != 0);
+        if (witness)
+            skip(2);
+        long numInputs = readVarInt();
+        for (long i = 0; i < numInputs; i++) {
+            skip(36);
+            skip(readVarInt());
+            skip(4);
+        }
+        long numOutputs = readVarInt();
+        for (long i = 0; i < numOutputs; i++) {
+            skip(8);
+            skip(readVarInt());
+        }
+        if (witness) {
+            witnessStart = cursor;
+            for (long i = 0; i < numInputs; i++) {
+                long numItems = readVarInt();
+                for (long j = 0; j < numItems; j++)
+                    skip(readVarInt());
+            }
+            witnessSize = 2 + cursor - witnessStart;
+        }
+        skip(4);
+        totalSize = cursor - start;
+    }
+
+    private long readVarInt() throws ProtocolException {
+        check(1);
+        int first = block.get(cursor) & 0xff;
+        cursor++;
+        if (first < 0xfd)
+            return first;
+        if (first == 0xfd) {
+            check(2);
+            int v = block.getShort(cursor) & 0xffff;
+            cursor += 2;
+            return v;
+        }
+        if (first == 0xfe) {
+            check(4);
+            long v = block.getInt(cursor) & 0xffffffffL;
+            cursor += 4;
+            return v;
+        }
+        check(8);
+        long v = block.getLong(cursor);
+        cursor += 8;
+        return v;
+    }
+
+    private void skip(long n) throws ProtocolException {
+        check(n);
+        cursor += (int) n;
+    }
+
+    private void check(long n) throws ProtocolException {
+        if ((n < 0) || (n > block.limit() - cursor))
+            throw new ProtocolException("Truncated block at byte " + cursor);
+    }
+}
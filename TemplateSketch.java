@@ -0,0 +1,165 @@
+package org.bitcoinj.tools;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Most frequent ScriptTemplates of a stream of scripts, in fixed memory.
+ * Every template is counted in a Count-Min sketch (DEPTH rows of WIDTH counters, allocated by the
+ * first record()), whose estimates are never below the real count and exceed it by at most
+ * e / WIDTH of all the scripts recorded with 98% probability. Alongside, the CANDIDATES templates
+ * with the highest estimates so far are kept with their readable form; a template seen more often
+ * than the weakest candidate replaces it. Sketches of disjoint ranges are combined with merge(),
+ * like BlockStats; the candidates of both are then ranked again on the merged counters.
+ */
+public class TemplateSketch {
+    static final int DEPTH = 4;
+    static final int WIDTH = 1024; // power of two
+    static final int CANDIDATES = 32;
+
+    private long[] table = null;
+    private long count = 0;
+    // Candidates 0..size-1: fingerprint, estimate when last seen and template
+    private final long[] keys = new long[CANDIDATES];
+    private final long[] estimates = new long[CANDIDATES];
+    private final String[] templates = new String[CANDIDATES];
+    private int size = 0;
+    // Not above the smallest estimate of the candidates
+    private long threshold = 0;
+
+    public void record(byte[] script) {
+        record(script, 0, script.length);
+    }
+
+    public void record(byte[] script, int offset, int length) {
+        long key = ScriptTemplate.fingerprint(script, offset, length);
+        long estimate = add(key);
+        for (int c = 0; c < size; c++) {
+            if (keys[c] == key) {
+                estimates[c] = estimate;
+                return;
+            }
+        }
+        if (size < CANDIDATES) {
+            set(size++, key, estimate, ScriptTemplate.render(script, offset, length));
+            return;
+        }
+        if (estimate <= threshold)
+            return;
+        int weakest = weakest();
+        threshold = estimates[weakest];
+        if (estimate > threshold) {
+            set(weakest, key, estimate, ScriptTemplate.render(script, offset, length));
+            threshold = estimates[weakest()];
+        }
+    }
+
+    private void set(int c, long key, long estimate, String template) {
+        keys[c] = key;
+        estimates[c] = estimate;
+        templates[c] = template;
+    }
+
+    private int weakest() {
+        int w = 0;
+        for (int c = 1; c < size; c++) {
+            if (estimates[c] < estimates[w])
+                w = c;
+        }
+        return w;
+    }
+
+    // Row r counter of a fingerprint, by double hashing
+    private static int column(long key, int r) {
+        long h = key + r * ((key >>> 32) | 1);
+        return (int) (h ^ (h >>> 29)) & (WIDTH - 1);
+    }
+
+    // Counts the fingerprint and returns its new estimate
+    private long add(long key) {
+        if (table == null)
+            table = new long[DEPTH * WIDTH];
+        count++;
+        long estimate = Long.MAX_VALUE;
+        for (int r = 0; r < DEPTH; r++) {
+            int i = r * WIDTH + column(key, r);
+            estimate = Math.min(estimate, ++table[i]);
+        }
+        return estimate;
+    }
+
+    private long estimate(long key) {
+        if (table == null)
+            return 0;
+        long estimate = Long.MAX_VALUE;
+        for (int r = 0; r < DEPTH; r++)
+            estimate = Math.min(estimate, table[r * WIDTH + column(key, r)]);
+        return estimate;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Adds the scripts of o to this sketch and returns this
+    public TemplateSketch merge(TemplateSketch o) {
+        if (o.count == 0)
+            return this;
+        if (table == null)
+            table = new long[DEPTH * WIDTH];
+        for (int i = 0; i < table.length; i++)
+            table[i] += o.table[i];
+        count += o.count;
+        // Rank the candidates of both sketches on the merged counters, keeping the best
+        long[] allKeys = Arrays.copyOf(keys, size + o.size);
+        String[] allTemplates = Arrays.copyOf(templates, size + o.size);
+        int n = size;
+        for (int c = 0; c < o.size; c++) {
+            boolean known = false;
+            for (int k = 0; k < size; k++)
+                known |= (keys[k] == o.keys[c]);
+            if (!known) {
+                allKeys[n] = o.keys[c];
+                allTemplates[n++] = o.templates[c];
+            }
+        }
+        size = 0;
+        for (int c = 0; c < n; c++) {
+            long estimate = estimate(allKeys[c]);
+            if (size < CANDIDATES) {
+                set(size++, allKeys[c], estimate, allTemplates[c]);
+            } else {
+                int weakest = weakest();
+                if (estimate > estimates[weakest])
+                    set(weakest, allKeys[c], estimate, allTemplates[c]);
+            }
+        }
+        threshold = (size > 0) ? estimates[weakest()] : 0;
+        return this;
+    }
+
+    // Candidate indexes, highest estimate first
+    private Integer[] ranking() {
+        Integer[] order = new Integer[size];
+        for (int c = 0; c < size; c++)
+            order[c] = c;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(estimate(keys[b]), estimate(keys[a]));
+            }
+        });
+        return order;
+    }
+
+    // One line per template among the top n: estimated count, share of all the scripts and template
+    public void print(String name, int n) {
+        Integer[] order = ranking();
+        for (int k = 0; k < Math.min(n, order.length); k++) {
+            int c = order[k];
+            long estimate = estimate(keys[c]);
+            System.out.println(String.format(Locale.US, "%s %d (%.2f%%): %s", name, estimate, estimate * 100.0 / count, templates[c]));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.TransactionOutPoint;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the inputs that InputClassifier could not recognize, grouped by the ScriptTemplate of
+ * their scriptSig, and writes them to a file when closed: one line per template with its count and
+ * a few example outpoints, most frequent first.
+ * report() is called from the analysis threads. Each thread computes the template fingerprint and
+ * counts it in a map of its own, so every input is counted; the maps are merged on close(). Only
+ * the first example outpoints of a template go through a bounded queue to a background thread.
+ * When the queue is full the example is dropped, and counted as such. When no report was started,
+ * report() does nothing.
+ */
+public class UnrecognizedInputs implements Closeable {
+    static final int QUEUE_SIZE = 8192;
+    static final int EXAMPLES = 3;
+    // Inputs of further templates are only counted
+    static final int MAX_TEMPLATES = 10000;
+
+    static class Entry {
+        final long key;
+        final TransactionOutPoint outpoint;
+
+        Entry(long key, TransactionOutPoint outpoint) {
+            this.key = key;
+            this.outpoint = outpoint;
+        }
+    }
+
+    static class Group {
+        // The first scriptSig of the template, rendered when the file is written
+        final byte[] scriptSig;
+        long count = 0;
+
+        Group(byte[] scriptSig) {
+            this.scriptSig = scriptSig;
+        }
+    }
+
+    // Templates counted by one analysis thread
+    static class Counts {
+        final Map<Long, Group> groups = new HashMap<>();
+        long overflow = 0;
+    }
+
+    static final Entry END = new Entry(0, null);
+
+    private static volatile UnrecognizedInputs current;
+
+    private final File file;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Queue<Counts> allCounts = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Counts> counts = new ThreadLocal<Counts>() {
+        @Override
+        protected Counts initialValue() {
+            Counts c = new Counts();
+            allCounts.add(c);
+            return c;
+        }
+    };
+    // Written by the background thread only
+    private final Map<Long, List<String>> examples = new HashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread consumer;
+
+    private UnrecognizedInputs(File file) {
+        this.file = file;
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "unrecognized-inputs");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Starts collecting the inputs reported from now on, to be written to file on close()
+    public static synchronized UnrecognizedInputs start(File file) {
+        if (current != null)
+            throw new IllegalStateException("Unrecognized inputs are already reported to " + current.file);
+        current = new UnrecognizedInputs(file);
+        return current;
+    }
+
+    public static void report(byte[] scriptSig, TransactionOutPoint outpoint) {
+        UnrecognizedInputs u = current;
+        if (u != null)
+            u.add(scriptSig, outpoint);
+    }
+
+    private void add(byte[] scriptSig, TransactionOutPoint outpoint) {
+        long key = ScriptTemplate.fingerprint(scriptSig);
+        Counts c = counts.get();
+        long count;
+        // Only contended when close() merges the maps
+        synchronized (c) {
+            Group g = c.groups.get(key);
+            if (g == null) {
+                if (c.groups.size() >= MAX_TEMPLATES) {
+                    c.overflow++;
+                    return;
+                }
+                g = new Group(scriptSig);
+                c.groups.put(key, g);
+            }
+            count = ++g.count;
+        }
+        // Each thread offers the first examples of a template it sees
+        if ((count <= EXAMPLES) && !queue.offer(new Entry(key, outpoint)))
+            dropped.increment();
+    }
+
+    private void consume() {
+        try {
+            while (true) {
+                Entry e = queue.take();
+                if (e == END)
+                    return;
+                List<String> list = examples.get(e.key);
+                if (list == null) {
+                    list = new ArrayList<>(EXAMPLES);
+                    examples.put(e.key, list);
+                }
+                if (list.size() < EXAMPLES)
+                    list.add(e.outpoint.toString());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits for the examples already reported, then merges the counts of every thread and writes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (UnrecognizedInputs.class) {
+            if (current == this)
+                current = null;
+        }
+        try {
+            queue.put(END);
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted writing " + file, e);
+        }
+        final Map<Long, Group> groups = new HashMap<>();
+        long received = 0;
+        long overflow = 0;
+        for (Counts c : allCounts) {
+            synchronized (c) {
+                received += c.overflow;
+                overflow += c.overflow;
+                for (Map.Entry<Long, Group> e : c.groups.entrySet()) {
+                    Group g = e.getValue();
+                    received += g.count;
+                    Group merged = groups.get(e.getKey());
+                    if (merged == null) {
+                        if (groups.size() >= MAX_TEMPLATES) {
+                            overflow += g.count;
+                            continue;
+                        }
+                        merged = new Group(g.scriptSig);
+                        groups.put(e.getKey(), merged);
+                    }
+                    merged.count += g.count;
+                }
+            }
+        }
+        List<Long> sorted = new ArrayList<>(groups.keySet());
+        Collections.sort(sorted, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                return Long.compare(groups.get(b).count, groups.get(a).count);
+            }
+        });
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("count\ttemplate\texamples");
+            for (Long key : sorted) {
+                List<String> list = examples.get(key);
+                out.println(groups.get(key).count + "\t" + ScriptTemplate.render(groups.get(key).scriptSig) + "\t"
+                        + ((list != null) ? String.join(" ", list) : ""));
+            }
+            if (overflow > 0)
+                out.println(overflow + "\t(other templates)\t");
+        }
+        if (received > 0)
+            System.out.println("Unrecognized inputs: " + received + " in " + groups.size() + " templates, written to " + file
+                    + ((dropped.sum() > 0) ? ", examples not recorded: " + dropped.sum() : ""));
+    }
+}
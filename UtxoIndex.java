@@ -0,0 +1,183 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Unspent outputs (outpoint -> OutputClassifier type flags and scriptPubKey size), kept in a
+ * memory-mapped file so that tens of millions of outputs cost no heap and no GC work.
+ * The file is a hash table with open addressing and linear probing. Each slot holds the first 12
+ * bytes of the transaction hash, the output index, the script size and the type; spent outputs are
+ * removed by shifting the following slots back, so lookups never skip over deleted entries.
+ * The capacity is fixed when the index is created; put() fails once the table is 90% full.
+ * Blocks must be added in height order, starting from the first block whose outputs are needed.
+ * The file is rewritten from scratch every time an index is created. Not thread-safe.
+ */
+public class UtxoIndex implements Closeable {
+    public static final long DEFAULT_CAPACITY = 1L << 26;
+    public static final long NOT_FOUND = -1;
+
+    static final int SLOT_SIZE = 24;
+    static final int KEY1 = 0; // long, hash bytes 0..7
+    static final int KEY2 = 8; // int, hash bytes 8..11
+    static final int INDEX = 12;
+    static final int SIZE = 16;
+    static final int TAG = 20; // 0 for an empty slot, 0x80 | type otherwise
+    static final int SEGMENT_BITS = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long mask;
+    private final int segmentMask;
+    private final long maxCount;
+    private long count = 0;
+    private long found = 0;
+    private long missing = 0;
+
+    // capacity is rounded up to a power of two
+    public UtxoIndex(File file, long capacity) throws IOException {
+        long slots = Long.highestOneBit(Math.max(capacity, 1 << 16) - 1) << 1;
+        int segmentSlots = (int) Math.min(slots, 1L << SEGMENT_BITS);
+        mask = slots - 1;
+        segmentMask = segmentSlots - 1;
+        maxCount = slots / 10 * 9;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segments = new MappedByteBuffer[(int) (slots / segmentSlots)];
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSlots * SLOT_SIZE, (long) segmentSlots * SLOT_SIZE);
+    }
+
+    private MappedByteBuffer segment(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)];
+    }
+
+    private int position(long slot) {
+        return (int) (slot & segmentMask) * SLOT_SIZE;
+    }
+
+    private long home(long key1, long index) {
+        long h = key1 + index * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 32)) & mask;
+    }
+
+    static long key1(byte[] hash) {
+        long k = 0;
+        for (int i = 0; i < 8; i++)
+            k = (k << 8) | (hash[i] & 0xff);
+        return k;
+    }
+
+    static int key2(byte[] hash) {
+        return ((hash[8] & 0xff) << 24) | ((hash[9] & 0xff) << 16) | ((hash[10] & 0xff) << 8) | (hash[11] & 0xff);
+    }
+
+    // Slot holding the outpoint, or the empty slot where it would go
+    private long find(long key1, int key2, long index) {
+        long slot = home(key1, index);
+        while (true) {
+            MappedByteBuffer seg = segment(slot);
+            int p = position(slot);
+            if (seg.get(p + TAG) == 0)
+                return slot;
+            if ((seg.getLong(p + KEY1) == key1) && (seg.getInt(p + KEY2) == key2) && (seg.getInt(p + INDEX) == (int) index))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public void put(Sha256Hash txHash, long index, int type, int size) {
+        byte[] hash = txHash.getBytes();
+        long k1 = key1(hash);
+        int k2 = key2(hash);
+        long slot = find(k1, k2, index);
+        MappedByteBuffer seg = segment(slot);
+        int p = position(slot);
+        if (seg.get(p + TAG) == 0) {
+            if (count >= maxCount)
+                throw new IllegalStateException("UTXO index is full (" + count + " outputs), create it with a larger capacity");
+            count++;
+        }
+        seg.putLong(p + KEY1, k1);
+        seg.putInt(p + KEY2, k2);
+        seg.putInt(p + INDEX, (int) index);
+        seg.putInt(p + SIZE, size);
+        seg.put(p + TAG, (byte) (0x80 | type));
+    }
+
+    // Removes the output and returns its type and size (see typeOf and sizeOf), or NOT_FOUND
+    public long spend(Sha256Hash txHash, long index) {
+        byte[] hash = txHash.getBytes();
+        long slot = find(key1(hash), key2(hash), index);
+        MappedByteBuffer seg = segment(slot);
+        int p = position(slot);
+        if (seg.get(p + TAG) == 0) {
+            missing++;
+            return NOT_FOUND;
+        }
+        long result = ((long) (seg.get(p + TAG) & 0x7f) << 32) | (seg.getInt(p + SIZE) & 0xffffffffL);
+        delete(slot);
+        count--;
+        found++;
+        return result;
+    }
+
+    public static int typeOf(long spent) {
+        return (int) (spent >>> 32);
+    }
+
+    public static int sizeOf(long spent) {
+        return (int) spent;
+    }
+
+    // Empties the slot, moving back the entries of the same probe run that would no longer be found
+    private void delete(long slot) {
+        long hole = slot;
+        long next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            MappedByteBuffer seg = segment(next);
+            int p = position(next);
+            if (seg.get(p + TAG) == 0)
+                break;
+            long h = home(seg.getLong(p + KEY1), seg.getInt(p + INDEX) & 0xffffffffL);
+            // An entry whose home is cyclically in (hole, next] is still reachable
+            boolean reachable = (hole <= next) ? ((hole < h) && (h <= next)) : ((hole < h) || (h <= next));
+            if (reachable)
+                continue;
+            MappedByteBuffer holeSeg = segment(hole);
+            int q = position(hole);
+            for (int i = 0; i < SLOT_SIZE; i += 4)
+                holeSeg.putInt(q + i, seg.getInt(p + i));
+            hole = next;
+        }
+        MappedByteBuffer seg = segment(hole);
+        seg.put(position(hole) + TAG, (byte) 0);
+    }
+
+    // Number of unspent outputs in the index
+    public long size() {
+        return count;
+    }
+
+    // Number of spend() calls that found their output
+    public long getFound() {
+        return found;
+    }
+
+    // Number of spend() calls for outputs not in the index, e.g. created before the first block added
+    public long getMissing() {
+        return missing;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,120 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptChunk;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blocks shared by all benchmarks, read once per trial from a block archive (see
+ * corpus/README.md). The archive of mainnet blocks checked in as corpus/mainnet is used when it is
+ * there; otherwise the benchmarks fall back to synthetic blocks, which CorpusGenerator writes to
+ * corpus/blocks if they are missing. Inputs, pushes and scripts are extracted up front so the
+ * benchmarks only measure the code under test.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkCorpus {
+    @Param("corpus/mainnet")
+    public String corpus;
+
+    static final String GENERATED = "corpus/blocks";
+
+    NetworkParameters params;
+    List<byte[]> blockBytes = new ArrayList<>();
+    List<Block> blocks = new ArrayList<>();
+    // Non-coinbase inputs, as the analysis loop sees them
+    List<TransactionInput> inputs = new ArrayList<>();
+    // Every data push of every scriptSig
+    List<byte[]> pushes = new ArrayList<>();
+    // Output scripts and redeem scripts (last push of scriptSigs) that parse
+    List<Script> scripts = new ArrayList<>();
+    // The corpus written as N.bin files, for importBlock
+    File binDirectory;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        params = MainNetParams.get();
+        new Context(params);
+        File base = new File(corpus);
+        boolean generated = !BlockArchive.indexFile(base).exists();
+        if (generated) {
+            base = new File(GENERATED);
+            System.out.println("No block archive at " + corpus + ", the benchmarks run on synthetic blocks from " + base);
+            // Generated once
+            if (!BlockArchive.indexFile(base).exists())
+                new CorpusGenerator(params).write(base);
+        }
+        try (BlockArchive archive = new BlockArchive(params, base)) {
+            if (archive.size() == 0)
+                throw new IllegalStateException("Empty benchmark corpus " + base);
+            binDirectory = Files.createTempDirectory("corpus").toFile();
+            BlockAnalysis ba = new BlockAnalysis();
+            for (int i = 0; i < archive.size(); i++) {
+                blockBytes.add(archive.readBytes(i));
+                Block block = archive.getBlock(i);
+                // Synthetic blocks are not mined, mainnet blocks must meet their target
+                if (!generated)
+                    block.verifyHeader();
+                blocks.add(block);
+                ba.exportBlock(params, block, new File(binDirectory, BlockAnalysis.blockFileName(i)).getPath());
+            }
+        }
+        for (Block block : blocks) {
+            List<Transaction> transactions = block.getTransactions();
+            for (int i = 0; i < transactions.size(); i++) {
+                Transaction t = transactions.get(i);
+                for (TransactionOutput output : t.getOutputs())
+                    addScript(output.getScriptBytes());
+                // Skip coinbase input because it is a mal-formed script
+                if (i == 0)
+                    continue;
+                for (TransactionInput input : t.getInputs()) {
+                    inputs.add(input);
+                    List<ScriptChunk> chunks = input.getScriptSig().getChunks();
+                    for (ScriptChunk chunk : chunks) {
+                        if (chunk.data != null)
+                            pushes.add(chunk.data);
+                    }
+                    if (!chunks.isEmpty() && (chunks.get(chunks.size() - 1).data != null))
+                        addScript(chunks.get(chunks.size() - 1).data);
+                }
+            }
+        }
+    }
+
+    private void addScript(byte[] bytes) {
+        try {
+            scripts.add(new Script(bytes));
+        } catch (ScriptException e) {
+            // not a script
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBinFiles() {
+        File[] files = binDirectory.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        binDirectory.delete();
+    }
+}
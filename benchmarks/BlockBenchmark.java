@@ -0,0 +1,71 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of block reading and of the whole per-block analysis.
+ * Each invocation handles one block of the corpus, so the scores are blocks/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockBenchmark {
+    int next = 0;
+    BlockAnalysis ba = new BlockAnalysis();
+    StreamingBlockReader reader;
+
+    private int nextIndex(BenchmarkCorpus c) {
+        int i = next;
+        next = (next + 1) % c.blocks.size();
+        return i;
+    }
+
+    // Deserialization of a block from bytes already in memory
+    @Benchmark
+    public Block deserialize(BenchmarkCorpus c) {
+        return c.params.getDefaultSerializer().makeBlock(c.blockBytes.get(nextIndex(c)));
+    }
+
+    // importBlock: mapping a N.bin file and deserializing it
+    @Benchmark
+    public Block importBlock(BenchmarkCorpus c) throws IOException {
+        String fileName = new File(c.binDirectory, BlockAnalysis.blockFileName(nextIndex(c))).getPath();
+        return ba.importBlock(c.params, fileName);
+    }
+
+    // The full analysis loop over an already deserialized block
+    @Benchmark
+    public BlockStats analyzeBlock(BenchmarkCorpus c) {
+        BlockStats s = new BlockStats();
+        BlockAnalysis.analyzeBlock(c.blocks.get(nextIndex(c)), s);
+        return s;
+    }
+
+    // Deserialization and analysis of a block from bytes in memory, one transaction at a time
+    @Benchmark
+    public BlockStats analyzeStreaming(BenchmarkCorpus c) {
+        if (reader == null)
+            reader = new StreamingBlockReader(c.params);
+        BlockStats s = new BlockStats();
+        reader.open(ByteBuffer.wrap(c.blockBytes.get(nextIndex(c))));
+        BlockAnalysis.analyzeBlock(reader, s);
+        return s;
+    }
+}
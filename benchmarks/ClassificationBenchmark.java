@@ -0,0 +1,102 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.TransactionInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the input and script classification predicates.
+ * Each invocation classifies one item of the corpus, so the scores are pushes/s, inputs/s or scripts/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ClassificationBenchmark {
+    int nextPush = 0;
+    int nextInput = 0;
+    int nextScript = 0;
+    BlockAnalysis.KeyStats ks = new BlockAnalysis.KeyStats();
+    ScriptPushes pushes = new ScriptPushes();
+
+    private TransactionInput input(BenchmarkCorpus c) {
+        TransactionInput input = c.inputs.get(nextInput);
+        nextInput = (nextInput + 1) % c.inputs.size();
+        return input;
+    }
+
+    @Benchmark
+    public boolean isValidSignatureEncoding(BenchmarkCorpus c) {
+        byte[] push = c.pushes.get(nextPush);
+        nextPush = (nextPush + 1) % c.pushes.size();
+        return BlockAnalysis.IsValidSignatureEncoding(push);
+    }
+
+    @Benchmark
+    public boolean isInputMULTISIG(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputMULTISIG(input(c));
+    }
+
+    @Benchmark
+    public boolean isInputP2PKXX(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputP2PKXX(input(c));
+    }
+
+    @Benchmark
+    public boolean isInputP2PKH(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputP2PKH(input(c));
+    }
+
+    @Benchmark
+    public boolean isInputP2SH_MULTISIG(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputP2SH_MULTISIG(input(c), ks);
+    }
+
+    @Benchmark
+    public boolean isInputP2SH(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputP2SH(input(c));
+    }
+
+    @Benchmark
+    public boolean isInputP2SH_PK(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputP2SH_PK(input(c));
+    }
+
+    @Benchmark
+    public boolean isInputP2PK(BenchmarkCorpus c) {
+        return BlockAnalysis.isInputP2PK(input(c));
+    }
+
+    // All seven predicates at once, as the analysis loop needs them
+    @Benchmark
+    public int classifyInput(BenchmarkCorpus c) {
+        return InputClassifier.classify(input(c), ks);
+    }
+
+    // The same through a reused ScriptPushes, as the analysis loop does
+    @Benchmark
+    public int classifyInputPushes(BenchmarkCorpus c) {
+        pushes.clear();
+        pushes.add(input(c).getScriptBytes());
+        pushes.validate();
+        return InputClassifier.classify(pushes, 0, ks);
+    }
+
+    @Benchmark
+    public boolean isSentToMultiSig(BenchmarkCorpus c) {
+        boolean result = BlockAnalysis.isSentToMultiSig(c.scripts.get(nextScript), ks);
+        nextScript = (nextScript + 1) % c.scripts.size();
+        return result;
+    }
+}
@@ -0,0 +1,199 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.bitcoinj.script.ScriptOpCodes.*;
+
+/**
+ * Writes a block archive of synthetic blocks, for a benchmark corpus that does not need mainnet blocks.
+ * The transactions have the input and output types BlockAnalysis classifies, in roughly the
+ * proportions of pre-segwit mainnet blocks: mostly P2PKH, then P2SH multisig, P2PK, bare multisig,
+ * P2SH P2PK and OP_RETURN. Signatures and keys are random but correctly encoded, which is all the
+ * classification checks. The same seed gives the same corpus.
+ */
+public class CorpusGenerator {
+    static final int BLOCKS = 32;
+    static final int TRANSACTIONS = 400;
+    static final long SEED = 42;
+
+    private final NetworkParameters params;
+    private final Random random = new Random(SEED);
+
+    public CorpusGenerator(NetworkParameters params) {
+        this.params = params;
+    }
+
+    public void write(File base) throws IOException {
+        File dir = base.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        Sha256Hash prev = Sha256Hash.ZERO_HASH;
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(base)) {
+            for (int height = 0; height < BLOCKS; height++) {
+                Block block = block(height, prev);
+                writer.append(height, block);
+                prev = block.getHash();
+            }
+        }
+    }
+
+    private Block block(int height, Sha256Hash prev) {
+        List<Transaction> transactions = new ArrayList<>();
+        Transaction coinbase = new Transaction(params);
+        coinbase.addInput(new TransactionInput(params, coinbase, new byte[] {3, (byte) height, (byte) (height >> 8), 0}));
+        coinbase.addOutput(new TransactionOutput(params, coinbase, Coin.FIFTY_COINS, p2pkhOutput()));
+        transactions.add(coinbase);
+        for (int i = 1; i < TRANSACTIONS; i++)
+            transactions.add(transaction());
+        // A null merkle root is calculated from the transactions
+        return new Block(params, 4, prev, null, 1500000000L + height * 600, 0x18000000L, random.nextInt(), transactions);
+    }
+
+    private Transaction transaction() {
+        Transaction t = new Transaction(params);
+        int numInputs = 1 + random.nextInt(3);
+        for (int j = 0; j < numInputs; j++) {
+            byte[] hash = new byte[32];
+            random.nextBytes(hash);
+            TransactionOutPoint outpoint = new TransactionOutPoint(params, random.nextInt(4), Sha256Hash.wrap(hash));
+            t.addInput(new TransactionInput(params, t, scriptSig(), outpoint));
+        }
+        int numOutputs = 1 + random.nextInt(3);
+        for (int j = 0; j < numOutputs; j++)
+            t.addOutput(new TransactionOutput(params, t, Coin.valueOf(1 + random.nextInt(100000000)), scriptPubKey()));
+        return t;
+    }
+
+    private byte[] scriptSig() {
+        int r = random.nextInt(100);
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        if (r < 70) {
+            // P2PKH
+            push(s, signature());
+            push(s, key());
+        } else if (r < 88) {
+            // P2SH 2-of-3 multisig
+            s.write(OP_0);
+            push(s, signature());
+            push(s, signature());
+            push(s, multisig(2, 3));
+        } else if (r < 94) {
+            // P2PK
+            push(s, signature());
+        } else if (r < 97) {
+            // Bare 1-of-2 multisig
+            s.write(OP_0);
+            push(s, signature());
+        } else {
+            // P2SH P2PK
+            push(s, signature());
+            ByteArrayOutputStream redeem = new ByteArrayOutputStream();
+            push(redeem, key());
+            redeem.write(OP_CHECKSIG);
+            push(s, redeem.toByteArray());
+        }
+        return s.toByteArray();
+    }
+
+    private byte[] scriptPubKey() {
+        int r = random.nextInt(100);
+        if (r < 75)
+            return p2pkhOutput();
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        if (r < 93) {
+            s.write(OP_HASH160);
+            push(s, bytes(20));
+            s.write(OP_EQUAL);
+        } else if (r < 96) {
+            push(s, key());
+            s.write(OP_CHECKSIG);
+        } else if (r < 98) {
+            return multisig(1, 2);
+        } else {
+            s.write(OP_RETURN);
+            push(s, bytes(1 + random.nextInt(40)));
+        }
+        return s.toByteArray();
+    }
+
+    private byte[] p2pkhOutput() {
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        s.write(OP_DUP);
+        s.write(OP_HASH160);
+        push(s, bytes(20));
+        s.write(OP_EQUALVERIFY);
+        s.write(OP_CHECKSIG);
+        return s.toByteArray();
+    }
+
+    private byte[] multisig(int m, int n) {
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        s.write(OP_1 + m - 1);
+        for (int k = 0; k < n; k++)
+            push(s, key());
+        s.write(OP_1 + n - 1);
+        s.write(OP_CHECKMULTISIG);
+        return s.toByteArray();
+    }
+
+    // DER signature with 32 or 33 byte R, 32 byte S and SIGHASH_ALL
+    private byte[] signature() {
+        byte[] r = bytes(32);
+        byte[] s = bytes(32);
+        r[0] |= 1;
+        s[0] = (byte) ((s[0] & 0x7f) | 1);
+        boolean padR = (r[0] & 0x80) != 0;
+        int lenR = padR ? 33 : 32;
+        ByteArrayOutputStream sig = new ByteArrayOutputStream();
+        sig.write(0x30);
+        sig.write(4 + lenR + 32);
+        sig.write(0x02);
+        sig.write(lenR);
+        if (padR)
+            sig.write(0);
+        sig.write(r, 0, 32);
+        sig.write(0x02);
+        sig.write(32);
+        sig.write(s, 0, 32);
+        sig.write(1);
+        return sig.toByteArray();
+    }
+
+    // Compressed or, one time in five, uncompressed public key
+    private byte[] key() {
+        boolean compressed = random.nextInt(5) != 0;
+        byte[] key = bytes(compressed ? 33 : 65);
+        key[0] = compressed ? (byte) (2 + random.nextInt(2)) : 4;
+        return key;
+    }
+
+    private byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    private static void push(ByteArrayOutputStream s, byte[] data) {
+        if (data.length < OP_PUSHDATA1) {
+            s.write(data.length);
+        } else {
+            s.write(OP_PUSHDATA1);
+            s.write(data.length);
+        }
+        s.write(data, 0, data.length);
+    }
+}
@@ -0,0 +1,86 @@
+package org.bitcoinj.examples;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.GetHeadersMessage;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.VersionMessage;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A peer without a connection that serves blocks and headers of a chain given to it. getBlock()
+ * returns a future the test completes; getheaders is answered at once, on the calling thread, by
+ * handing a headers message to the listeners of the peer as if it had been received.
+ */
+class FakePeer extends Peer {
+    final NetworkParameters params;
+    final List<Block> chain;
+    final Map<Sha256Hash, Integer> heights = new HashMap<>();
+    final Map<Sha256Hash, Block> blocks = new HashMap<>();
+    int headersRequests = 0;
+
+    FakePeer(NetworkParameters params, int port, List<Block> chain) {
+        super(params, new VersionMessage(params, chain.size() - 1), new PeerAddress(params, InetAddress.getLoopbackAddress(), port), null);
+        this.params = params;
+        this.chain = chain;
+        for (int h = 0; h < chain.size(); h++) {
+            heights.put(chain.get(h).getHash(), h);
+            blocks.put(chain.get(h).getHash(), chain.get(h));
+        }
+    }
+
+    // The block, at once; the downloader test overrides it
+    @Override
+    public ListenableFuture<Block> getBlock(Sha256Hash hash) {
+        SettableFuture<Block> future = SettableFuture.create();
+        if (blocks.containsKey(hash))
+            future.set(blocks.get(hash));
+        else
+            future.setException(new IllegalArgumentException("Unknown block " + hash));
+        return future;
+    }
+
+    // The headers after the first locator hash, up to the stop hash or MAX_HEADERS, as Bitcoin Core sends them
+    @Override
+    public void sendMessage(Message m) {
+        if (!(m instanceof GetHeadersMessage))
+            return;
+        headersRequests++;
+        GetHeadersMessage request = (GetHeadersMessage) m;
+        Integer start = heights.get(request.getLocator().get(0));
+        List<Block> headers = new ArrayList<>();
+        for (int h = (start != null) ? start + 1 : 0; (h < chain.size()) && (headers.size() < HeadersMessage.MAX_HEADERS); h++) {
+            headers.add(chain.get(h).cloneAsHeader());
+            if (chain.get(h).getHash().equals(request.getStopHash()))
+                break;
+        }
+        try {
+            processMessage(new HeadersMessage(params, headers));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // A chain of length blocks from the genesis block, 10 minutes apart
+    static List<Block> chain(NetworkParameters params, int length) {
+        List<Block> chain = new ArrayList<>();
+        Block block = params.getGenesisBlock();
+        chain.add(block);
+        for (int h = 1; h < length; h++) {
+            block = block.createNextBlock(null, Block.BLOCK_VERSION_GENESIS, params.getGenesisBlock().getTimeSeconds() + h * 600L, h);
+            chain.add(block);
+        }
+        return chain;
+    }
+}
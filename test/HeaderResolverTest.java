@@ -0,0 +1,118 @@
+package org.bitcoinj.examples;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.CheckpointManager;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.RegTestParams;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * HeaderResolver must find the hashes and heights of the blocks before a block, from a checkpoint
+ * or from the genesis block, over as many getheaders requests as needed.
+ */
+public class HeaderResolverTest {
+    static final int LENGTH = 2600;
+
+    static NetworkParameters params;
+    static List<Block> chain;
+
+    @BeforeClass
+    public static void setUp() {
+        params = RegTestParams.get();
+        new Context(params);
+        chain = FakePeer.chain(params, LENGTH);
+    }
+
+    // A checkpoints file with the blocks at the heights
+    static CheckpointManager checkpoints(int... heights) throws IOException {
+        StringBuilder sb = new StringBuilder("TXT CHECKPOINTS 1\n0\n" + heights.length + "\n");
+        for (int h : heights) {
+            Block header = chain.get(h).cloneAsHeader();
+            ByteBuffer buffer = ByteBuffer.allocate(StoredBlock.COMPACT_SERIALIZED_SIZE);
+            new StoredBlock(header, header.getWork(), h).serializeCompact(buffer);
+            sb.append(CheckpointManager.BASE64.encode(buffer.array())).append('\n');
+        }
+        return new CheckpointManager(params, new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    static void assertBlocks(int end, int count, List<Sha256Hash> hashes, List<Integer> heights) {
+        assertEquals(count, hashes.size());
+        assertEquals(count, heights.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(end - i, (int) heights.get(i));
+            assertEquals(chain.get(end - i).getHash(), hashes.get(i));
+        }
+    }
+
+    @Test
+    public void fromCheckpoints() throws Exception {
+        FakePeer peer = new FakePeer(params, 1, chain);
+        HeaderResolver resolver = new HeaderResolver(params, peer, checkpoints(200, 400, 600, 800, 1000), 1000);
+        List<Sha256Hash> hashes = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>();
+        // The checkpoint at 800 is less than a day before 900, the headers go back to 400
+        assertEquals(500, resolver.resolve(chain.get(900).getHash(), 500, hashes, heights));
+        assertBlocks(900, 500, hashes, heights);
+        assertEquals(2, peer.headersRequests);
+    }
+
+    @Test
+    public void acrossTheBlockOfACheckpoint() throws Exception {
+        FakePeer peer = new FakePeer(params, 1, chain);
+        HeaderResolver resolver = new HeaderResolver(params, peer, checkpoints(200, 400), 1000);
+        List<Sha256Hash> hashes = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>();
+        assertEquals(301, resolver.resolve(chain.get(700).getHash(), 301, hashes, heights));
+        assertBlocks(700, 301, hashes, heights);
+    }
+
+    @Test
+    public void fromGenesisOverManyRequests() throws Exception {
+        FakePeer peer = new FakePeer(params, 1, chain);
+        HeaderResolver resolver = new HeaderResolver(params, peer, null, 1000);
+        List<Sha256Hash> hashes = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>();
+        assertEquals(10, resolver.resolve(chain.get(LENGTH - 1).getHash(), 10, hashes, heights));
+        assertBlocks(LENGTH - 1, 10, hashes, heights);
+        assertEquals(2, peer.headersRequests);
+    }
+
+    @Test
+    public void chainShorterThanCount() throws Exception {
+        FakePeer peer = new FakePeer(params, 1, chain);
+        HeaderResolver resolver = new HeaderResolver(params, peer, null, 1000);
+        List<Sha256Hash> hashes = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>();
+        assertEquals(31, resolver.resolve(chain.get(30).getHash(), 100, hashes, heights));
+        assertBlocks(30, 31, hashes, heights);
+    }
+
+    @Test
+    public void blockNotInChain() throws Exception {
+        // The peer has the block but not the chain up to it
+        List<Block> shortChain = new ArrayList<>(chain.subList(0, 50));
+        FakePeer peer = new FakePeer(params, 1, shortChain);
+        peer.blocks.put(chain.get(100).getHash(), chain.get(100));
+        HeaderResolver resolver = new HeaderResolver(params, peer, null, 1000);
+        try {
+            resolver.resolve(chain.get(100).getHash(), 10, new ArrayList<Sha256Hash>(), new ArrayList<Integer>());
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.tools.BlockAnalysis.KeyStats;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.bitcoinj.script.ScriptOpCodes.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * InputClassifier.classify must give the types of the seven isInput* predicates of BlockAnalysis,
+ * and leave the same multisig statistics in KeyStats as isInputP2SH_MULTISIG.
+ */
+public class InputClassifierTest {
+    static NetworkParameters params;
+
+    @BeforeClass
+    public static void setUp() {
+        params = MainNetParams.get();
+        new Context(params);
+    }
+
+    // The flags of the isInput* predicates. A scriptSig that bitcoinj cannot parse made them throw
+    // and matches no type for the classifier. So does a predicate that throws on a scriptSig
+    // ending in OP_1..OP_16, whose chunk has no data.
+    static int legacy(final TransactionInput input, final KeyStats ks) {
+        try {
+            input.getScriptSig();
+        } catch (ScriptException e) {
+            return 0;
+        }
+        int flags = 0;
+        if (matches(() -> BlockAnalysis.isInputMULTISIG(input)))
+            flags |= InputClassifier.MULTISIG;
+        if (matches(() -> BlockAnalysis.isInputP2PKXX(input)))
+            flags |= InputClassifier.P2PKXX;
+        if (matches(() -> BlockAnalysis.isInputP2PKH(input)))
+            flags |= InputClassifier.P2PKH;
+        if (matches(() -> BlockAnalysis.isInputP2SH_MULTISIG(input, ks)))
+            flags |= InputClassifier.P2SH_MULTISIG;
+        if (matches(() -> BlockAnalysis.isInputP2SH(input)))
+            flags |= InputClassifier.P2SH;
+        if (matches(() -> BlockAnalysis.isInputP2SH_PK(input)))
+            flags |= InputClassifier.P2SH_PK;
+        if (matches(() -> BlockAnalysis.isInputP2PK(input)))
+            flags |= InputClassifier.P2PK;
+        return flags;
+    }
+
+    static boolean matches(BooleanSupplier predicate) {
+        try {
+            return predicate.getAsBoolean();
+        } catch (NullPointerException e) {
+            return false;
+        }
+    }
+
+    static TransactionInput input(byte[] scriptSig) {
+        Transaction t = new Transaction(params);
+        return new TransactionInput(params, t, scriptSig);
+    }
+
+    // Classifies the scriptSigs together, as analyzeTransaction does for the inputs of a transaction,
+    // and returns the types found
+    static int assertSameTypes(List<byte[]> scriptSigs) {
+        int found = 0;
+        KeyStats expectedKs = new KeyStats();
+        KeyStats actualKs = new KeyStats();
+        ScriptPushes pushes = new ScriptPushes();
+        for (byte[] scriptSig : scriptSigs)
+            pushes.add(scriptSig);
+        pushes.validate();
+        for (int k = 0; k < scriptSigs.size(); k++) {
+            TransactionInput input = input(scriptSigs.get(k));
+            int flags = InputClassifier.classify(pushes, k, actualKs);
+            assertEquals("scriptSig " + Utils.HEX.encode(scriptSigs.get(k)), legacy(input, expectedKs), flags);
+            found |= flags;
+        }
+        assertSameKeyStats(expectedKs, actualKs);
+        return found;
+    }
+
+    static void assertSameKeyStats(KeyStats expected, KeyStats actual) {
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.acNumKeys, actual.acNumKeys);
+        assertEquals(expected.acNumSigs, actual.acNumSigs);
+        assertEquals(expected.count2of3, actual.count2of3);
+        assertEquals(expected.count2of2, actual.count2of2);
+        assertEquals(expected.acSigSize, actual.acSigSize);
+        assertArrayEquals(expected.shapes, actual.shapes);
+        assertEquals(expected.distinctKeys.estimate(), actual.distinctKeys.estimate());
+    }
+
+    static void assertSameTypes(byte[]... scriptSigs) {
+        List<byte[]> list = new ArrayList<>();
+        for (byte[] scriptSig : scriptSigs)
+            list.add(scriptSig);
+        assertSameTypes(list);
+    }
+
+    @Test
+    public void corpusInputs() throws Exception {
+        int inputs = 0;
+        List<Transaction> transactions = TestScripts.corpusTransactions(params);
+        for (int i = 0; i < transactions.size(); i++) {
+            // The coinbase input is not classified
+            if (transactions.get(i).isCoinBase())
+                continue;
+            List<byte[]> scriptSigs = new ArrayList<>();
+            for (TransactionInput input : transactions.get(i).getInputs())
+                scriptSigs.add(input.getScriptBytes());
+            assertSameTypes(scriptSigs);
+            inputs += scriptSigs.size();
+        }
+        assertTrue(inputs > 0);
+    }
+
+    @Test
+    public void edgeCases() {
+        TestScripts s = new TestScripts(1);
+        byte[] sig = s.signature();
+        byte[] key = s.compressedKey();
+        // empty
+        assertSameTypes(new byte[0]);
+        // truncated pushes
+        assertSameTypes(new byte[] {72, 0x30, 0x45});
+        assertSameTypes(new byte[] {(byte) OP_PUSHDATA1});
+        assertSameTypes(new byte[] {(byte) OP_PUSHDATA2, 10});
+        assertSameTypes(new byte[] {(byte) OP_PUSHDATA4, 10, 0, 0});
+        // P2PK, P2PKH, P2PKXX with 16 to 20 byte hashes and the lengths around them
+        assertSameTypes(TestScripts.script(sig));
+        assertSameTypes(TestScripts.script(sig, key));
+        for (int n = 14; n <= 22; n++)
+            assertSameTypes(TestScripts.script(sig, s.bytes(n)));
+        // odd signature lengths: too short, too long, and a valid one with a byte missing
+        assertSameTypes(TestScripts.script(new byte[8], key));
+        assertSameTypes(TestScripts.script(Arrays.copyOf(sig, 74), key));
+        assertSameTypes(TestScripts.script(Arrays.copyOf(sig, sig.length - 1), key));
+        // odd key lengths and prefixes
+        for (int n = 30; n <= 66; n++) {
+            byte[] k = s.bytes(n);
+            k[0] = (byte) (n < 60 ? 2 : 4);
+            assertSameTypes(TestScripts.script(sig, k));
+        }
+        // OP_0 multisig: bare, with OP_1 as dummy, and P2SH 2-of-3
+        byte[] multisig = multisig(2, 3, s);
+        assertSameTypes(concat(new byte[] {(byte) OP_0}, TestScripts.script(sig, sig)));
+        assertSameTypes(concat(new byte[] {(byte) OP_1}, TestScripts.script(sig, sig)));
+        assertSameTypes(concat(new byte[] {(byte) OP_0}, TestScripts.script(sig, sig, multisig)));
+        assertSameTypes(concat(new byte[] {(byte) OP_0}, TestScripts.script(multisig)));
+        assertSameTypes(concat(new byte[] {(byte) OP_0}, TestScripts.script(new byte[8], multisig)));
+        // 0-of-n and n-of-n with a missing key
+        assertSameTypes(concat(new byte[] {(byte) OP_0}, TestScripts.script(sig, multisig(0, 2, s))));
+        assertSameTypes(concat(new byte[] {(byte) OP_0}, TestScripts.script(sig, Arrays.copyOf(multisig, multisig.length - 36))));
+        // P2SH P2PK and a P2SH redeem script that is not standard
+        assertSameTypes(TestScripts.script(sig, s.payToPubKey()));
+        assertSameTypes(TestScripts.script(s.bytes(10), new byte[] {(byte) OP_TRUE}));
+        // a non-push chunk before the redeem script
+        assertSameTypes(concat(new byte[] {(byte) OP_DUP}, TestScripts.script(sig, multisig)));
+        // the same scriptSigs in one transaction, so chunks of one script follow the other
+        assertSameTypes(TestScripts.script(sig, key), new byte[] {72, 0x30}, TestScripts.script(sig, multisig),
+                concat(new byte[] {(byte) OP_0}, TestScripts.script(sig, sig, multisig)));
+    }
+
+    @Test
+    public void randomScriptSigs() {
+        TestScripts s = new TestScripts(7);
+        int found = 0;
+        for (int t = 0; t < 5000; t++) {
+            List<byte[]> scriptSigs = new ArrayList<>();
+            int n = 1 + s.random.nextInt(4);
+            for (int k = 0; k < n; k++)
+                scriptSigs.add(s.scriptSig());
+            found |= assertSameTypes(scriptSigs);
+        }
+        // Every type was matched at least once
+        assertEquals((1 << InputClassifier.TYPE_NAMES.length) - 1, found);
+    }
+
+    static byte[] multisig(int m, int n, TestScripts s) {
+        ByteArrayOutputStream script = new ByteArrayOutputStream();
+        script.write(m == 0 ? OP_0 : OP_1 + m - 1);
+        for (int k = 0; k < n; k++)
+            TestScripts.push(script, s.compressedKey());
+        script.write(OP_1 + n - 1);
+        script.write(OP_CHECKMULTISIG);
+        return script.toByteArray();
+    }
+
+    static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
@@ -0,0 +1,128 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.tools.BlockAnalysis.KeyStats;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.bitcoinj.script.ScriptOpCodes.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OutputClassifier.classify must give the types of the Script predicates the output loop used
+ * before, fast paths included, and count the same bare multisig scripts in KeyStats.
+ */
+public class OutputClassifierTest {
+    static NetworkParameters params;
+
+    @BeforeClass
+    public static void setUp() {
+        params = MainNetParams.get();
+        new Context(params);
+    }
+
+    // The flags of the Script predicates on output.getScriptPubKey()
+    static int legacy(TransactionOutput output, KeyStats ks) {
+        Script script;
+        try {
+            script = output.getScriptPubKey();
+        } catch (ScriptException e) {
+            // If script has errors, count as invalid
+            return OutputClassifier.INVALID;
+        }
+        int flags = 0;
+        if (script.isOpReturn())
+            flags |= OutputClassifier.OPRETURN;
+        if (script.isSentToCLTVPaymentChannel())
+            flags |= OutputClassifier.CLTV_PAYMENT_CHANNEL;
+        if (script.isPayToScriptHash())
+            flags |= OutputClassifier.P2SH;
+        if (BlockAnalysis.isSentToMultiSig(script, ks))
+            flags |= OutputClassifier.MULTISIG;
+        if (script.isSentToAddress())
+            flags |= OutputClassifier.ADDRESS;
+        if (script.isSentToRawPubKey())
+            flags |= OutputClassifier.RAW_PUBKEY;
+        return flags;
+    }
+
+    // Returns the types found
+    static int assertSameTypes(byte[] scriptPubKey) {
+        Transaction t = new Transaction(params);
+        TransactionOutput output = new TransactionOutput(params, t, Coin.SATOSHI, scriptPubKey);
+        KeyStats expectedKs = new KeyStats();
+        KeyStats actualKs = new KeyStats();
+        int flags = OutputClassifier.classify(scriptPubKey, actualKs);
+        assertEquals("scriptPubKey " + Utils.HEX.encode(scriptPubKey), legacy(output, expectedKs), flags);
+        InputClassifierTest.assertSameKeyStats(expectedKs, actualKs);
+        return flags;
+    }
+
+    @Test
+    public void corpusOutputs() throws Exception {
+        int outputs = 0;
+        List<Transaction> transactions = TestScripts.corpusTransactions(params);
+        for (Transaction t : transactions) {
+            for (TransactionOutput output : t.getOutputs()) {
+                assertSameTypes(output.getScriptBytes());
+                outputs++;
+            }
+        }
+        assertTrue(outputs > 0);
+    }
+
+    @Test
+    public void malformedAndNonStandard() {
+        TestScripts s = new TestScripts(3);
+        byte[] hash = s.bytes(20);
+        byte[] p2sh = TestScripts.concat(new byte[] {(byte) OP_HASH160}, TestScripts.script(hash), new byte[] {(byte) OP_EQUAL});
+        byte[] p2pkh = TestScripts.concat(new byte[] {(byte) OP_DUP, (byte) OP_HASH160}, TestScripts.script(hash),
+                new byte[] {(byte) OP_EQUALVERIFY, (byte) OP_CHECKSIG});
+        assertSameTypes(new byte[0]);
+        assertSameTypes(p2sh);
+        assertSameTypes(p2pkh);
+        // The fast paths check lengths and opcodes: every byte changed and every prefix
+        for (byte[] template : new byte[][] {p2sh, p2pkh, s.payToPubKey(), TestScripts.concat(new byte[] {(byte) OP_0}, TestScripts.script(hash))}) {
+            for (int i = 0; i < template.length; i++) {
+                assertSameTypes(Arrays.copyOf(template, i));
+                for (int v : new int[] {0, 1, 20, 32, 33, 65, OP_PUSHDATA1, OP_RETURN, OP_EQUAL, OP_CHECKSIG}) {
+                    byte[] changed = template.clone();
+                    changed[i] = (byte) v;
+                    assertSameTypes(changed);
+                }
+            }
+        }
+        // P2PK with keys of the fast path lengths that are not canonical
+        assertSameTypes(TestScripts.concat(TestScripts.script(new byte[33]), new byte[] {(byte) OP_CHECKSIG}));
+        assertSameTypes(TestScripts.concat(TestScripts.script(new byte[65]), new byte[] {(byte) OP_CHECKSIG}));
+        // OP_RETURN with truncated data, and with a push through OP_PUSHDATA2
+        assertSameTypes(new byte[] {(byte) OP_RETURN, 10, 1, 2});
+        assertSameTypes(new byte[] {(byte) OP_RETURN, (byte) OP_PUSHDATA2, 3, 0, 1, 2, 3});
+        assertSameTypes(new byte[] {(byte) OP_RETURN, (byte) OP_PUSHDATA4, 1, 0});
+        // bare multisig
+        assertSameTypes(InputClassifierTest.multisig(1, 2, s));
+        assertSameTypes(InputClassifierTest.multisig(2, 3, s));
+    }
+
+    @Test
+    public void randomScriptPubKeys() {
+        TestScripts s = new TestScripts(11);
+        int found = 0;
+        for (int t = 0; t < 20000; t++)
+            found |= assertSameTypes(s.scriptPubKey());
+        // Every type was matched at least once
+        assertEquals((1 << 7) - 1, found);
+    }
+}
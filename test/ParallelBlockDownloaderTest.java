@@ -0,0 +1,150 @@
+package org.bitcoinj.examples;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.params.RegTestParams;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ParallelBlockDownloader must hand every block to the listener once, with its index, send the
+ * first request of each block in the order of the list, and never have more than window
+ * requests outstanding, stalled requests included.
+ */
+public class ParallelBlockDownloaderTest {
+    static NetworkParameters params;
+    static List<Block> chain;
+
+    final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicInteger maxOutstanding = new AtomicInteger();
+    // Indexes in the order of their first request
+    final List<Integer> firstRequests = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Sha256Hash> requested = Collections.synchronizedList(new ArrayList<Sha256Hash>());
+    List<Sha256Hash> hashes;
+
+    @BeforeClass
+    public static void setUp() {
+        params = RegTestParams.get();
+        new Context(params);
+        chain = FakePeer.chain(params, 300);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    // Completes each request after a random delay, except those chosen to stall, which never complete
+    class DelayedPeer extends FakePeer {
+        final Random random;
+        final int stallOneIn;
+
+        DelayedPeer(int port, long seed, int stallOneIn) {
+            super(ParallelBlockDownloaderTest.params, port, ParallelBlockDownloaderTest.chain);
+            this.random = new Random(seed);
+            this.stallOneIn = stallOneIn;
+        }
+
+        @Override
+        public synchronized ListenableFuture<Block> getBlock(final Sha256Hash hash) {
+            if (!requested.contains(hash))
+                firstRequests.add(hashes.indexOf(hash));
+            requested.add(hash);
+            int n = outstanding.incrementAndGet();
+            int max = maxOutstanding.get();
+            while ((n > max) && !maxOutstanding.compareAndSet(max, n))
+                max = maxOutstanding.get();
+            final SettableFuture<Block> future = SettableFuture.create();
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    outstanding.decrementAndGet();
+                }
+            }, MoreExecutors.directExecutor());
+            if ((stallOneIn == 0) || (random.nextInt(stallOneIn) != 0)) {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        future.set(blocks.get(hash));
+                    }
+                }, random.nextInt(5), TimeUnit.MILLISECONDS);
+            }
+            return future;
+        }
+    }
+
+    static PeerGroup peerGroup(final List<Peer> peers) {
+        return new PeerGroup(params) {
+            @Override
+            public List<Peer> getConnectedPeers() {
+                return peers;
+            }
+        };
+    }
+
+    void download(List<Peer> peers, final int window, long stallMillis) throws Exception {
+        hashes = new ArrayList<>();
+        // Newest first, as FetchLastBlocks lists them
+        for (int h = chain.size() - 1; h > 0; h--)
+            hashes.add(chain.get(h).getHash());
+        final int[] received = new int[hashes.size()];
+        final List<Sha256Hash> hashesToCheck = hashes;
+        ParallelBlockDownloader downloader = new ParallelBlockDownloader(peerGroup(peers), window, stallMillis, 20);
+        downloader.download(hashes, new ParallelBlockDownloader.Listener() {
+            @Override
+            public void onBlock(int index, Block block) {
+                received[index]++;
+                assertEquals(hashesToCheck.get(index), block.getHash());
+                // Outstanding requests are bounded while the listener runs too
+                assertTrue(outstanding.get() <= window);
+            }
+        });
+        for (int i = 0; i < received.length; i++)
+            assertEquals("block " + i, 1, received[i]);
+        assertEquals(hashes.size(), firstRequests.size());
+        for (int i = 0; i < firstRequests.size(); i++)
+            assertEquals(i, (int) firstRequests.get(i));
+        assertTrue("max outstanding " + maxOutstanding.get(), maxOutstanding.get() <= window);
+    }
+
+    @Test
+    public void everyBlockOnceInOrderWithinTheWindow() throws Exception {
+        List<Peer> peers = new ArrayList<>();
+        for (int p = 0; p < 3; p++)
+            peers.add(new DelayedPeer(p + 1, p, 0));
+        download(peers, 8, 10000);
+        assertEquals(hashes.size(), requested.size());
+        // The window was used
+        assertTrue(maxOutstanding.get() > 1);
+    }
+
+    @Test
+    public void stalledRequestsAreSentAgain() throws Exception {
+        List<Peer> peers = new ArrayList<>();
+        for (int p = 0; p < 3; p++)
+            peers.add(new DelayedPeer(p + 1, p, 10));
+        download(peers, 5, 50);
+        assertTrue(requested.size() > hashes.size());
+    }
+}
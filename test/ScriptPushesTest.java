@@ -0,0 +1,96 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Context;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.tools.BlockAnalysis.KeyStats;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.bitcoinj.script.ScriptOpCodes.OP_0;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The signature flags validate() sets for a whole transaction must be those of checking each push
+ * on its own, and a reused instance must give the same results as a new one.
+ */
+public class ScriptPushesTest {
+    @BeforeClass
+    public static void setUp() {
+        new Context(MainNetParams.get());
+    }
+
+    // Every chunk of the first scripts added, as validate() flagged it and as checked alone
+    static void assertSameAsPerChunk(ScriptPushes pushes, int scripts) {
+        for (int k = 0; k < scripts; k++) {
+            byte[] script = pushes.getScript(k);
+            for (int c = pushes.getFirst(k); c < pushes.getFirst(k) + pushes.getChunkCount(k); c++) {
+                byte[] data = Arrays.copyOfRange(script, pushes.getOffset(c), pushes.getOffset(c) + pushes.getLength(c));
+                boolean expected = pushes.isData(c) && BlockAnalysis.isSignature(data);
+                assertEquals("script " + k + " chunk " + c, expected, pushes.isSignature(c));
+            }
+        }
+    }
+
+    @Test
+    public void validSignatureAfterInvalidOne() {
+        TestScripts s = new TestScripts(5);
+        byte[] sig = s.signature();
+        byte[] bad = Arrays.copyOf(sig, sig.length - 1);
+        List<byte[]> scriptSigs = new ArrayList<>();
+        scriptSigs.add(TestScripts.script(bad, sig));
+        scriptSigs.add(TestScripts.concat(new byte[] {(byte) OP_0}, TestScripts.script(bad, sig, sig)));
+        scriptSigs.add(TestScripts.script(sig));
+        scriptSigs.add(TestScripts.script(bad, bad, sig, s.compressedKey()));
+        ScriptPushes pushes = new ScriptPushes();
+        for (byte[] scriptSig : scriptSigs)
+            pushes.add(scriptSig);
+        pushes.validate();
+        assertSameAsPerChunk(pushes, pushes.size());
+        assertFalse(pushes.isSignature(pushes.getFirst(0)));
+        assertTrue(pushes.isSignature(pushes.getFirst(0) + 1));
+
+        // Classified in the batch or one input at a time, the types are the same
+        for (int k = 0; k < scriptSigs.size(); k++) {
+            KeyStats ks = new KeyStats();
+            assertEquals(InputClassifier.classify(InputClassifierTest.input(scriptSigs.get(k)), ks),
+                    InputClassifier.classify(pushes, k, ks));
+        }
+    }
+
+    // Redeem scripts are added after validate(). Their chunks must not keep the flags of chunks
+    // at the same index in an earlier transaction.
+    @Test
+    public void lateChunksAfterReuse() {
+        TestScripts s = new TestScripts(6);
+        byte[] sig = s.signature();
+        byte[] bad = Arrays.copyOf(sig, sig.length - 1);
+        ScriptPushes reused = new ScriptPushes();
+        // An earlier transaction with a signature in every chunk
+        for (int k = 0; k < 4; k++)
+            reused.add(TestScripts.script(sig, sig, sig, sig));
+        reused.validate();
+        reused.clear();
+
+        // An invalid signature, then a redeem script that pushes valid signatures
+        byte[] scriptSig = TestScripts.script(bad, TestScripts.script(sig, sig, sig));
+        ScriptPushes fresh = new ScriptPushes();
+        for (ScriptPushes pushes : new ScriptPushes[] {reused, fresh}) {
+            pushes.add(scriptSig);
+            pushes.validate();
+            InputClassifier.classify(pushes, 0, new KeyStats());
+            assertEquals(2, pushes.size());
+        }
+        assertSameAsPerChunk(fresh, 1);
+        for (int c = 0; c < fresh.getFirst(2); c++)
+            assertEquals("chunk " + c, fresh.isSignature(c), reused.isSignature(c));
+        // The redeem script chunks were never validated
+        for (int c = fresh.getFirst(1); c < fresh.getFirst(2); c++)
+            assertFalse(reused.isSignature(c));
+    }
+}
@@ -0,0 +1,89 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Range sums of a StatsRangeIndex must be those of adding the stored rows of the range, for
+ * heights far apart, stale blocks and rows without a height.
+ */
+public class StatsRangeIndexTest {
+    static BlockStatsStore.Row row(int height, long value) {
+        long[] counters = new long[BlockStats.FIELD_COUNT];
+        for (int j = 0; j < counters.length; j++)
+            counters[j] = value * (j + 1);
+        return new BlockStatsStore.Row(Sha256Hash.of(new byte[] {(byte) height, (byte) value}), height, counters);
+    }
+
+    // The first counter of the rows with a height in from..to
+    static long expected(List<BlockStatsStore.Row> rows, int from, int to) {
+        long sum = 0;
+        for (BlockStatsStore.Row row : rows) {
+            if ((row.height >= 0) && (row.height >= from) && (row.height <= to))
+                sum += row.counters[0];
+        }
+        return sum;
+    }
+
+    @Test
+    public void sparseHeights() {
+        List<BlockStatsStore.Row> rows = new ArrayList<>();
+        rows.add(row(800000, 5));
+        rows.add(row(0, 1));
+        rows.add(row(-1, 100));
+        rows.add(row(500000, 3));
+        rows.add(row(500001, 4));
+        StatsRangeIndex index = new StatsRangeIndex(rows);
+        assertEquals(4, index.size());
+        assertEquals(0, index.getFirstHeight());
+        assertEquals(800000, index.getLastHeight());
+        assertEquals(500000, index.getHeight(1));
+        assertEquals(0, index.getDuplicates());
+
+        int[] bounds = {-5, 0, 1, 499999, 500000, 500001, 500002, 799999, 800000, 800001};
+        for (int from : bounds) {
+            for (int to : bounds) {
+                long[] sum = index.sum(from, to);
+                long first = expected(rows, from, to);
+                assertEquals(from + "-" + to, first, sum[0]);
+                assertEquals(from + "-" + to, first * BlockStats.FIELD_COUNT, sum[BlockStats.FIELD_COUNT - 1]);
+            }
+        }
+        assertEquals(3, index.countBlocks(0, 500001));
+        assertEquals(3, index.countBlocks(1, 800000));
+        assertEquals(2, index.countBlocks(500001, 800000));
+        assertEquals(0, index.countBlocks(1, 499999));
+        assertEquals(0, index.countBlocks(800001, 900000));
+    }
+
+    @Test
+    public void lastBlockOfAHeightIsUsed() {
+        List<BlockStatsStore.Row> rows = new ArrayList<>();
+        rows.add(row(10, 1));
+        rows.add(row(11, 2));
+        rows.add(row(10, 3));
+        rows.add(row(12, 4));
+        rows.add(row(10, 5));
+        rows.add(row(12, 6));
+        StatsRangeIndex index = new StatsRangeIndex(rows);
+        assertEquals(3, index.size());
+        assertEquals(2, index.getDuplicates());
+        assertEquals(5, index.sum(10, 10)[0]);
+        assertEquals(5 + 2 + 6, index.sum(0, 20)[0]);
+        assertEquals(3, index.countBlocks(10, 12));
+    }
+
+    @Test
+    public void noHeights() {
+        StatsRangeIndex index = new StatsRangeIndex(Collections.singletonList(row(-1, 1)));
+        assertEquals(0, index.size());
+        assertEquals(0, index.sum(0, 100)[0]);
+        assertEquals(0, index.countBlocks(0, 100));
+    }
+}
@@ -0,0 +1,137 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Segwit transactions must reach bitcoinj without their witnesses, whether streamed or parsed as
+ * part of a Block, while their sizes are measured from the block bytes.
+ */
+public class StreamingBlockReaderTest {
+    // The signed native P2WPKH example of BIP 143: a P2PK input and a P2WPKH input, two P2PKH outputs
+    static final String SEGWIT_TX = "01000000000102fff7f7881a8099afa6940d42d1e7f6362bec38171ea3edf433541db4e4ad969f00000000"
+            + "494830450221008b9d1dc26ba6a9cb62127b02742fa9d754cd3bebf337f7a55d114c8e5cdd30be022040529b194ba3f9281a99f2b1c0a19c0489"
+            + "bc22ede944ccf4ecbab4cc618ef3ed01eeffffffef51e1b804cc89d182d279655c3aa89e815b1b309fe287d9b2b55d57b90ec68a0100000000ff"
+            + "ffffff02202cb206000000001976a9148280b37df378db99f66f85c95a783a76ac7a6d5988ac9093510d000000001976a9143bde42dbee7e4d"
+            + "be6a21b2d50ce2f0167faa815988ac000247304402203609e17b84f6a7d30c80bfa610b5b4542f32a8a0d5447a12fb1366d7f01cc44a022057"
+            + "3a954c4518331561406f90300e8f3358f51928d43c212a8caed02de67eebee0121025476c2e83188368da1ff3e292e7acafcdb3566bb0ad253"
+            + "f62fc70f07aeee635711000000";
+    static final String SEGWIT_TXID = "e8151a2af31c368a35053ddd4bdb285a8595c769a3ad83e0fa02314a602d4609";
+    // A coinbase with the witness reserved value, as in every segwit block
+    static final String SEGWIT_COINBASE = "01000000000101" + "0000000000000000000000000000000000000000000000000000000000000000ffffffff"
+            + "0403a08601ffffffff" + "0100f2052a01000000" + "1976a914000000000000000000000000000000000000000088ac"
+            + "0120" + "0000000000000000000000000000000000000000000000000000000000000000" + "00000000";
+
+    static NetworkParameters params;
+
+    @BeforeClass
+    public static void setUp() {
+        params = MainNetParams.get();
+        new Context(params);
+    }
+
+    // A block of the transactions with an all-zero header, which parsing does not check
+    static byte[] block(String... transactions) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        b.write(new byte[Block.HEADER_SIZE], 0, Block.HEADER_SIZE);
+        b.write(transactions.length);
+        for (String t : transactions) {
+            byte[] bytes = Utils.HEX.decode(t);
+            b.write(bytes, 0, bytes.length);
+        }
+        return b.toByteArray();
+    }
+
+    @Test
+    public void segwitTransaction() throws Exception {
+        StreamingBlockReader reader = new StreamingBlockReader(params);
+        reader.open(ByteBuffer.wrap(block(SEGWIT_COINBASE, SEGWIT_TX)));
+        assertEquals(2, reader.getTransactionCount());
+
+        Transaction coinbase = reader.next();
+        assertEquals(1, coinbase.getInputs().size());
+        assertEquals(1, coinbase.getOutputs().size());
+        assertEquals(2 + 1 + 1 + 32, reader.getWitnessSize());
+
+        Transaction t = reader.next();
+        assertEquals(2, t.getInputs().size());
+        assertEquals(2, t.getOutputs().size());
+        assertEquals(SEGWIT_TXID, t.getHashAsString());
+        assertEquals(343, reader.getTotalSize());
+        assertEquals(233, reader.getBaseSize());
+        assertEquals(t.getMessageSize(), reader.getBaseSize());
+        assertEquals(110, reader.getWitnessSize());
+        assertEquals(233 * 3 + 343, reader.getWeight());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void segwitBlock() throws Exception {
+        byte[] bytes = block(SEGWIT_COINBASE, SEGWIT_TX);
+        byte[] stripped = StreamingBlockReader.stripWitnesses(params, ByteBuffer.wrap(bytes));
+        assertEquals(bytes.length - 36 - 110, stripped.length);
+
+        Block block = StreamingBlockReader.makeBlock(params, ByteBuffer.wrap(bytes));
+        assertEquals(2, block.getTransactions().size());
+        Transaction t = block.getTransactions().get(1);
+        assertEquals(2, t.getInputs().size());
+        assertEquals(2, t.getOutputs().size());
+        assertEquals(SEGWIT_TXID, t.getHashAsString());
+        assertArrayEquals(stripped, block.bitcoinSerialize());
+    }
+
+    @Test
+    public void analyzedSegwitBlock() throws Exception {
+        StreamingBlockReader reader = new StreamingBlockReader(params);
+        reader.open(ByteBuffer.wrap(block(SEGWIT_COINBASE, SEGWIT_TX)));
+        BlockStats s = new BlockStats();
+        BlockAnalysis.analyzeBlock(reader, s);
+        assertEquals(2, s.acTransactions);
+        assertEquals(1 + 2, s.acInputs);
+        assertEquals(1 + 2, s.acOutputs);
+        assertEquals(1 + 2, s.acSentToAddress);
+        // The first input spends a P2PK output. The P2WPKH input has an empty scriptSig.
+        assertEquals(1, s.acInputP2PK);
+        assertEquals(0, s.acInputP2PKH + s.acInputP2PKXX + s.acInputP2SH + s.acInputP2SH_PK
+                + s.acInputP2SH_MULTISIG + s.acInputMULTISIG);
+        int coinbase = Utils.HEX.decode(SEGWIT_COINBASE).length;
+        assertEquals(coinbase + 343, s.acTotalSize);
+        assertEquals(coinbase - 36 + 233, s.acBaseSize);
+        assertEquals(36 + 110, s.acWitnessSize);
+        assertEquals(2, s.acSegwitTransactions);
+    }
+
+    @Test
+    public void deserializeTimedPerBlock() throws Exception {
+        long before = Metrics.DESERIALIZE.getCount();
+        StreamingBlockReader reader = new StreamingBlockReader(params);
+        reader.open(ByteBuffer.wrap(block(SEGWIT_COINBASE, SEGWIT_TX)));
+        reader.next();
+        assertEquals(before, Metrics.DESERIALIZE.getCount());
+        reader.skip();
+        assertEquals(before + 1, Metrics.DESERIALIZE.getCount());
+        StreamingBlockReader.makeBlock(params, ByteBuffer.wrap(block(SEGWIT_COINBASE, SEGWIT_TX)));
+        assertEquals(before + 2, Metrics.DESERIALIZE.getCount());
+    }
+
+    @Test
+    public void blockWithoutWitnesses() throws Exception {
+        Block genesis = params.getGenesisBlock();
+        byte[] bytes = genesis.bitcoinSerialize();
+        assertArrayEquals(bytes, StreamingBlockReader.stripWitnesses(params, ByteBuffer.wrap(bytes)));
+        assertEquals(genesis.getHash(), StreamingBlockReader.makeBlock(params, ByteBuffer.wrap(bytes)).getHash());
+    }
+}
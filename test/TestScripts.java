@@ -0,0 +1,289 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.ScriptBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.bitcoinj.script.ScriptOpCodes.*;
+
+/**
+ * Script pieces for the classifier tests: well formed templates, and the same templates with
+ * wrong lengths, bad encodings and truncated pushes, drawn from a seeded Random.
+ */
+class TestScripts {
+    final Random random;
+
+    TestScripts(long seed) {
+        random = new Random(seed);
+    }
+
+    // The transactions of the blocks of the generated benchmark corpus
+    static List<Transaction> corpusTransactions(NetworkParameters params) throws IOException {
+        File dir = Files.createTempDirectory("corpus").toFile();
+        File base = new File(dir, "blocks");
+        List<Transaction> transactions = new ArrayList<>();
+        try {
+            new CorpusGenerator(params).write(base);
+            try (BlockArchive archive = new BlockArchive(params, base)) {
+                for (int i = 0; i < archive.size(); i++) {
+                    Block block = archive.getBlock(i);
+                    transactions.addAll(block.getTransactions());
+                }
+            }
+        } finally {
+            BlockArchive.dataFile(base).delete();
+            BlockArchive.indexFile(base).delete();
+            dir.delete();
+        }
+        return transactions;
+    }
+
+    // DER signature with a sighash byte, 71 to 73 bytes
+    byte[] signature() {
+        int lenR = 32 + random.nextInt(2);
+        int lenS = 32;
+        ByteArrayOutputStream sig = new ByteArrayOutputStream();
+        sig.write(0x30);
+        sig.write(4 + lenR + lenS);
+        sig.write(0x02);
+        sig.write(lenR);
+        // A 33-byte R is a positive number with its high bit set: 0x00 then 0x80 or more
+        if (lenR == 33) {
+            sig.write(0);
+            sig.write(0x80 | random.nextInt(0x80));
+            write(sig, bytes(lenR - 2));
+        } else {
+            sig.write(1 + random.nextInt(0x7f));
+            write(sig, bytes(lenR - 1));
+        }
+        sig.write(0x02);
+        sig.write(lenS);
+        sig.write(1 + random.nextInt(0x7f));
+        write(sig, bytes(lenS - 1));
+        sig.write(1);
+        return sig.toByteArray();
+    }
+
+    // A signature that fails one of the DER checks, or has an unusual length
+    byte[] badSignature() {
+        byte[] sig = signature();
+        switch (random.nextInt(6)) {
+            case 0:
+                sig[0] = 0x31;
+                return sig;
+            case 1:
+                sig[1]++;
+                return sig;
+            case 2:
+                // negative R
+                sig[4] = (byte) 0x80;
+                return sig;
+            case 3:
+                return Arrays.copyOf(sig, 8);
+            case 4:
+                return Arrays.copyOf(sig, 74 + random.nextInt(8));
+            default:
+                return bytes(1 + random.nextInt(80));
+        }
+    }
+
+    // Compressed, uncompressed, or a key of the wrong length or prefix
+    byte[] key() {
+        switch (random.nextInt(5)) {
+            case 0:
+                return prefixed(4, 65);
+            case 1:
+                return prefixed(4, 33);
+            case 2:
+                return prefixed(2 + random.nextInt(2), 34 + random.nextInt(40));
+            case 3:
+                return prefixed(6 + random.nextInt(2), 65);
+            default:
+                return prefixed(2 + random.nextInt(2), 33);
+        }
+    }
+
+    byte[] compressedKey() {
+        return prefixed(2 + random.nextInt(2), 33);
+    }
+
+    private byte[] prefixed(int prefix, int length) {
+        byte[] key = bytes(length);
+        key[0] = (byte) prefix;
+        return key;
+    }
+
+    // m [pubkey] ... n OP_CHECKMULTISIG, sometimes with wrong counts or a non-push in the keys
+    byte[] multisig() {
+        int n = 1 + random.nextInt(4);
+        int m = random.nextInt(6) == 0 ? 0 : 1 + random.nextInt(n);
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        s.write(m == 0 ? OP_0 : OP_1 + m - 1);
+        int keys = random.nextInt(8) == 0 ? n + 1 : n;
+        for (int k = 0; k < keys; k++) {
+            if (random.nextInt(20) == 0)
+                s.write(OP_DUP);
+            else
+                push(s, random.nextBoolean() ? compressedKey() : key());
+        }
+        s.write(OP_1 + n - 1);
+        s.write(random.nextInt(6) == 0 ? OP_CHECKMULTISIGVERIFY : OP_CHECKMULTISIG);
+        return s.toByteArray();
+    }
+
+    // [pubkey] OP_CHECKSIG
+    byte[] payToPubKey() {
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        push(s, key());
+        s.write(OP_CHECKSIG);
+        return s.toByteArray();
+    }
+
+    // A random scriptSig made of the pieces above, some of them truncated
+    byte[] scriptSig() {
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        int n = random.nextInt(5);
+        for (int c = 0; c < n; c++) {
+            switch (random.nextInt(12)) {
+                case 0:
+                    s.write(OP_0);
+                    break;
+                case 1:
+                    s.write(OP_1 + random.nextInt(16));
+                    break;
+                case 2:
+                case 3:
+                    push(s, signature());
+                    break;
+                case 4:
+                    push(s, badSignature());
+                    break;
+                case 5:
+                    push(s, key());
+                    break;
+                case 6:
+                    push(s, bytes(16 + random.nextInt(5)));
+                    break;
+                case 7:
+                    push(s, multisig());
+                    break;
+                case 8:
+                    push(s, payToPubKey());
+                    break;
+                case 9:
+                    // OP_PUSHDATA2 of a short push
+                    byte[] data = bytes(random.nextInt(30));
+                    s.write(OP_PUSHDATA2);
+                    s.write(data.length);
+                    s.write(0);
+                    write(s, data);
+                    break;
+                case 10:
+                    s.write(OP_CHECKSIG);
+                    break;
+                default:
+                    push(s, bytes(random.nextInt(100)));
+                    break;
+            }
+        }
+        byte[] script = s.toByteArray();
+        // A push that runs past the end of the script
+        if ((script.length > 0) && (random.nextInt(10) == 0))
+            return Arrays.copyOf(script, script.length - 1 - random.nextInt(Math.min(script.length, 4)));
+        return script;
+    }
+
+    // A random scriptPubKey: a standard template, the same template with one byte changed, cut or
+    // added, or random bytes
+    byte[] scriptPubKey() {
+        byte[] script;
+        switch (random.nextInt(9)) {
+            case 0:
+                script = concat(new byte[] {(byte) OP_HASH160}, script(bytes(20)), new byte[] {(byte) OP_EQUAL});
+                break;
+            case 1:
+                script = concat(new byte[] {(byte) OP_DUP, (byte) OP_HASH160}, script(bytes(20)),
+                        new byte[] {(byte) OP_EQUALVERIFY, (byte) OP_CHECKSIG});
+                break;
+            case 2:
+                script = payToPubKey();
+                break;
+            case 3:
+                script = concat(new byte[] {(byte) OP_RETURN}, random.nextBoolean() ? script(bytes(random.nextInt(80))) : bytes(random.nextInt(10)));
+                break;
+            case 4:
+                script = concat(new byte[] {(byte) OP_0}, script(bytes(random.nextBoolean() ? 20 : 32)));
+                break;
+            case 5:
+                script = multisig();
+                break;
+            case 6:
+                script = ScriptBuilder.createCLTVPaymentChannelOutput(BigInteger.valueOf(500000 + random.nextInt(1000)),
+                        new ECKey(), new ECKey()).getProgram();
+                break;
+            case 7:
+                script = new byte[0];
+                break;
+            default:
+                return bytes(random.nextInt(70));
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                if (script.length > 0)
+                    script[random.nextInt(script.length)] = (byte) random.nextInt(256);
+                return script;
+            case 1:
+                return Arrays.copyOf(script, random.nextInt(script.length + 1));
+            case 2:
+                return concat(script, bytes(1));
+            default:
+                return script;
+        }
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            write(s, part);
+        return s.toByteArray();
+    }
+
+    byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    static byte[] script(byte[]... pushes) {
+        ByteArrayOutputStream s = new ByteArrayOutputStream();
+        for (byte[] data : pushes)
+            push(s, data);
+        return s.toByteArray();
+    }
+
+    static void push(ByteArrayOutputStream s, byte[] data) {
+        if (data.length < OP_PUSHDATA1) {
+            s.write(data.length);
+        } else {
+            s.write(OP_PUSHDATA1);
+            s.write(data.length);
+        }
+        write(s, data);
+    }
+
+    static void write(ByteArrayOutputStream s, byte[] data) {
+        s.write(data, 0, data.length);
+    }
+}
@@ -0,0 +1,81 @@
+package org.bitcoinj.tools;
+
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every input reported from any thread must be counted under its template, however many more
+ * inputs there are than room in the example queue.
+ */
+public class UnrecognizedInputsTest {
+    static NetworkParameters params;
+
+    @BeforeClass
+    public static void setUp() {
+        params = MainNetParams.get();
+        new Context(params);
+    }
+
+    @Test
+    public void countsFromManyThreads() throws Exception {
+        final int threads = 4;
+        final int perThread = 3 * UnrecognizedInputs.QUEUE_SIZE;
+        final byte[][] scriptSigs = {
+                TestScripts.script(new byte[10]),
+                TestScripts.script(new byte[10], new byte[40]),
+                new byte[] {(byte) 0xb0, (byte) 0xb1},
+        };
+        File file = File.createTempFile("unrecognized", ".txt");
+        try {
+            UnrecognizedInputs unrecognized = UnrecognizedInputs.start(file);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                workers[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < perThread; i++)
+                            UnrecognizedInputs.report(scriptSigs[i % scriptSigs.length],
+                                    new TransactionOutPoint(params, i, Sha256Hash.of(new byte[] {(byte) thread})));
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers)
+                worker.join();
+            unrecognized.close();
+            // Nothing is counted after close()
+            UnrecognizedInputs.report(scriptSigs[0], new TransactionOutPoint(params, 0, Sha256Hash.ZERO_HASH));
+
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals("count\ttemplate\texamples", lines.get(0));
+            assertEquals(1 + scriptSigs.length, lines.size());
+            Map<String, Long> counts = new HashMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split("\t");
+                counts.put(fields[1], Long.parseLong(fields[0]));
+                int examples = fields[2].split(" ").length;
+                assertTrue(line, (examples >= 1) && (examples <= UnrecognizedInputs.EXAMPLES));
+            }
+            for (byte[] scriptSig : scriptSigs)
+                assertEquals(Long.valueOf(threads * perThread / scriptSigs.length), counts.get(ScriptTemplate.render(scriptSig)));
+        } finally {
+            file.delete();
+        }
+    }
+}